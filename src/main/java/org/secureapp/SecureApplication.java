@@ -5,10 +5,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication
 @EnableEncryptableProperties
+@EnableScheduling
 public class SecureApplication {
 
     private static final Logger logger = LoggerFactory.getLogger(SecureApplication.class);
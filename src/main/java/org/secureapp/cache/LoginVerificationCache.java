@@ -0,0 +1,97 @@
+package org.secureapp.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.secureapp.util.LruCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Remembers successful password verifications for a short time so repeated logins
+ * skip BCrypt. Only an HMAC of (username, password, stored hash) under a per-process
+ * random key is kept; a different password, or a changed stored hash, never matches
+ * and falls through to the full check.
+ */
+@Component
+public class LoginVerificationCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @Value("${login.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${login.cache.size:10000}")
+    private int maxSize;
+
+    @Value("${login.cache.ttl:60000}")
+    private long ttlMillis;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private LruCache<String, byte[]> cache;
+
+    private ThreadLocal<Mac> mac;
+
+    @PostConstruct
+    public void init() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec secretKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+                instance.init(secretKey);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        cache = new LruCache<>(maxSize, ttlMillis);
+
+        FunctionCounter.builder("login.cache.hits", cache, LruCache::getHitCount)
+                .register(meterRegistry);
+        FunctionCounter.builder("login.cache.misses", cache, LruCache::getMissCount)
+                .register(meterRegistry);
+    }
+
+    public boolean isVerified(String username, String password, String storedHash) {
+        if (!enabled) {
+            return false;
+        }
+
+        byte[] verified = cache.get(normalize(username));
+        return verified != null && MessageDigest.isEqual(verified, digest(username, password, storedHash));
+    }
+
+    public void markVerified(String username, String password, String storedHash) {
+        if (enabled) {
+            cache.put(normalize(username), digest(username, password, storedHash));
+        }
+    }
+
+    public void invalidate(String username) {
+        cache.remove(normalize(username));
+    }
+
+    private byte[] digest(String username, String password, String storedHash) {
+        Mac instance = mac.get();
+        instance.update(normalize(username).getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        instance.update(password.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        return instance.doFinal(storedHash.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,170 @@
+package org.secureapp.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.model.TokenStore;
+import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.util.BloomFilter;
+import org.secureapp.util.LruCache;
+import org.secureapp.util.TokenDigest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * In-memory front for the token black list. A Bloom filter over the token digests
+ * answers the common "not revoked" case without touching the database, and a bounded
+ * LRU remembers revocations already confirmed against {@code token_store}.
+ * Revocations written by other instances are picked up by polling new rows every
+ * {@code jwt.blacklist.sync.interval} ms, which bounds how long such a token is still
+ * accepted here.
+ */
+@Component
+@Slf4j
+public class RevokedTokenCache {
+
+    @Value("${jwt.blacklist.bloom.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${jwt.blacklist.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${jwt.blacklist.lru.size:10000}")
+    private int lruSize;
+
+    @Value("${jwt.blacklist.load.batch-size:10000}")
+    private int loadBatchSize;
+
+    @Value("${jwt.blacklist.bloom.rebuild-fraction:0.2}")
+    private double rebuildFraction;
+
+    @Autowired
+    BlackListedTokenRepository blackListedTokenRepository;
+
+    private volatile BloomFilter bloomFilter;
+
+    private LruCache<String, Boolean> confirmedRevocations;
+
+    /* Highest token_store id loaded into the filter, and the value it had before the last sync */
+    private long loadedUpToId;
+
+    private long previouslyLoadedUpToId;
+
+    /* Distinct digests put into the filter, give or take its false positives */
+    private long entries;
+
+    @PostConstruct
+    public void init() {
+        confirmedRevocations = new LruCache<>(lruSize, 0);
+        rebuild();
+    }
+
+    /**
+     * Reloads the Bloom filter from {@code token_store}. Bloom filters don't support
+     * removal, so this is also the way to drop entries deleted from the table.
+     */
+    public synchronized void rebuild() {
+        BloomFilter filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        long[] loaded = load(filter, 0);
+
+        bloomFilter = filter;
+        loadedUpToId = loaded[0];
+        previouslyLoadedUpToId = loaded[0];
+        entries = loaded[1];
+        log.info("Loaded {} revoked tokens into the black list filter", loaded[1]);
+    }
+
+    /**
+     * Rebuilds the filter once more than jwt.blacklist.bloom.rebuild-fraction of its
+     * entries have been purged from {@code token_store}, by this instance or another
+     * one. Dead entries only cost false positives, so a full reload after every purge
+     * isn't worth it.
+     *
+     * @return whether the filter was rebuilt
+     */
+    public synchronized boolean rebuildIfStale() {
+        long purgedEntries = entries - blackListedTokenRepository.count();
+        if (purgedEntries <= rebuildFraction * entries) {
+            return false;
+        }
+
+        log.info("{} of {} black list filter entries were purged, rebuilding it", purgedEntries, entries);
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Adds rows inserted since the previous sync to the filter. Ids are allocated
+     * before commit, so a row can become visible after a higher id was already loaded;
+     * each sync therefore re-reads from the mark of the sync before it. Adding a
+     * digest twice is harmless.
+     */
+    @Scheduled(fixedDelayString = "${jwt.blacklist.sync.interval:5000}",
+            initialDelayString = "${jwt.blacklist.sync.interval:5000}")
+    public synchronized void loadNewRevocations() {
+        long[] loaded = load(bloomFilter, previouslyLoadedUpToId);
+
+        previouslyLoadedUpToId = loadedUpToId;
+        loadedUpToId = Math.max(loadedUpToId, loaded[0]);
+        entries += loaded[1];
+        log.debug("Synced {} revoked tokens into the black list filter", loaded[1]);
+    }
+
+    /* Pages through token_store after the given id, returns the last id read and the number of new digests */
+    private long[] load(BloomFilter filter, long afterId) {
+        long count = 0;
+        long lastId = afterId;
+
+        List<TokenStore> page;
+        do {
+            page = blackListedTokenRepository.findNextPage(lastId, PageRequest.of(0, loadBatchSize));
+            for (TokenStore tokenStore : page) {
+                if (!filter.mightContain(tokenStore.getTokenDigest())) {
+                    filter.put(tokenStore.getTokenDigest());
+                    count++;
+                }
+                lastId = tokenStore.getId();
+            }
+        } while (page.size() == loadBatchSize);
+
+        return new long[]{lastId, count};
+    }
+
+    public boolean isRevoked(String token) {
+        return isRevoked(TokenDigest.sha256(token));
+    }
+
+    public boolean isRevoked(byte[] digest) {
+        if (!bloomFilter.mightContain(digest)) {
+            return false;
+        }
+
+        String key = Base64.getEncoder().encodeToString(digest);
+        if (confirmedRevocations.get(key) != null) {
+            return true;
+        }
+
+        if (blackListedTokenRepository.existsByTokenDigest(digest)) {
+            confirmedRevocations.put(key, Boolean.TRUE);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Registers a token that has just been written to {@code token_store}.
+     */
+    public synchronized void markRevoked(byte[] digest) {
+        if (!bloomFilter.mightContain(digest)) {
+            bloomFilter.put(digest);
+            entries++;
+        }
+        confirmedRevocations.put(Base64.getEncoder().encodeToString(digest), Boolean.TRUE);
+    }
+}
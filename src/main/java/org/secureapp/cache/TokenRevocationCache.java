@@ -0,0 +1,107 @@
+package org.secureapp.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.repository.UserBatchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Per-user cutoffs from {@code token_revocation}: access tokens of a user issued at
+ * or before the cutoff are rejected. Used when bulk operations change or remove many
+ * users at once, whose individual tokens are unknown. Token issue times only have
+ * second precision, so tokens issued in the same second as the cutoff are rejected
+ * too. Cutoffs written by other instances are loaded incrementally; each load starts
+ * jwt.revocation.reload.lag ms before the previous one, to catch cutoffs committed
+ * after it by transactions that started earlier. A loaded cutoff that is new or later
+ * than the known one also drops the user from the {@link UserDetailsCache}, so users
+ * deleted or re-roled on another instance stop resolving from stale cached details
+ * within jwt.revocation.reload.interval ms.
+ */
+@Component
+@Slf4j
+public class TokenRevocationCache {
+
+    @Value("${jwt.revocation.reload.lag:300000}")
+    private long reloadLagMillis;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Autowired
+    UserDetailsCache userDetailsCache;
+
+    private final Map<String, Instant> cutoffs = new ConcurrentHashMap<>();
+
+    /* Cutoffs set after this instant are read by the next incremental load */
+    private Instant loadedSince = Instant.EPOCH;
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Replaces the cached cutoffs with the content of the table. Only meant for startup,
+     * the scheduled loads are incremental.
+     */
+    public synchronized void reload() {
+        cutoffs.clear();
+        loadedSince = Instant.EPOCH;
+        loadNew();
+        log.info("Loaded {} token revocation cutoffs", cutoffs.size());
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.reload.interval:5000}",
+            initialDelayString = "${jwt.revocation.reload.interval:5000}")
+    public synchronized void loadNew() {
+        Instant queryStart = Instant.now();
+        userBatchRepository.forEachTokenRevocationAfter(loadedSince, (username, cutoff) -> {
+            // merge returns the loaded instance only when it was stored, i.e. when it is new or
+            // later; cutoffs re-read within the lag window leave the cached details alone
+            if (cutoffs.merge(username, cutoff, TokenRevocationCache::latest) == cutoff) {
+                userDetailsCache.invalidate(username);
+            }
+        });
+        loadedSince = queryStart.minusMillis(reloadLagMillis);
+    }
+
+    /**
+     * Drops cutoffs that no longer affect any unexpired token.
+     */
+    public void evictOlderThan(Instant threshold) {
+        cutoffs.values().removeIf(cutoff -> cutoff.isBefore(threshold));
+    }
+
+    /**
+     * Records cutoffs already written to the table by the caller.
+     */
+    public void revokeTokensIssuedBefore(Collection<String> normalizedUsernames, Instant cutoff) {
+        for (String normalizedUsername : normalizedUsernames) {
+            cutoffs.merge(normalizedUsername, cutoff, TokenRevocationCache::latest);
+        }
+    }
+
+    public boolean isRevoked(String username, Date issuedAt) {
+        if (cutoffs.isEmpty()) {
+            return false;
+        }
+
+        Instant cutoff = cutoffs.get(normalize(username));
+        return cutoff != null && !issuedAt.toInstant().isAfter(cutoff);
+    }
+
+    private static Instant latest(Instant current, Instant next) {
+        return next.isAfter(current) ? next : current;
+    }
+}
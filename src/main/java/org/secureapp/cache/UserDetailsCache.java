@@ -0,0 +1,62 @@
+package org.secureapp.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.secureapp.config.SecuredUserDetails;
+import org.secureapp.util.LruCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Short lived cache of the user details resolved for authenticated requests, keyed
+ * by lower-cased username. Entries are dropped locally when the user is updated or
+ * deleted. Other instances drop deleted or re-roled users when they load the token
+ * cutoff written for them (see {@link TokenRevocationCache}); any other change is
+ * picked up there when the entry expires, so the ttl bounds how stale it can get.
+ */
+@Component
+public class UserDetailsCache {
+
+    @Value("${user.details.cache.size:10000}")
+    private int maxSize;
+
+    @Value("${user.details.cache.ttl:60000}")
+    private long ttlMillis;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private LruCache<String, SecuredUserDetails> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>(maxSize, ttlMillis);
+
+        FunctionCounter.builder("user.details.cache.hits", cache, LruCache::getHitCount)
+                .register(meterRegistry);
+        FunctionCounter.builder("user.details.cache.misses", cache, LruCache::getMissCount)
+                .register(meterRegistry);
+        FunctionCounter.builder("user.details.cache.evictions", cache, LruCache::getEvictionCount)
+                .register(meterRegistry);
+        Gauge.builder("user.details.cache.size", cache, LruCache::size)
+                .register(meterRegistry);
+    }
+
+    public SecuredUserDetails get(String username) {
+        return cache.get(normalize(username));
+    }
+
+    public void put(SecuredUserDetails userDetails) {
+        cache.put(normalize(userDetails.getUsername()), userDetails);
+    }
+
+    public void invalidate(String username) {
+        cache.remove(normalize(username));
+    }
+}
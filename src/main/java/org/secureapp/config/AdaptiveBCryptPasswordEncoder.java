@@ -0,0 +1,95 @@
+package org.secureapp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder with a deployment specific cost. Every stored hash carries the cost
+ * it was created with, and {@link #upgradeEncoding(String)} reports hashes with a lower
+ * cost than the current one, so they are re-hashed on the next successful login.
+ * Hashes with a higher cost are kept: with a cost benchmarked per host, hosts of a
+ * mixed fleet would otherwise keep re-hashing each other's hashes back and forth.
+ */
+@Slf4j
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2([ayb])?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private static final String BENCHMARK_PASSWORD = "benchmark-Passw0rd!";
+
+    private static final int BENCHMARK_ROUNDS = 3;
+
+    private final int strength;
+
+    private final BCryptPasswordEncoder delegate;
+
+    public AdaptiveBCryptPasswordEncoder(int strength) {
+        this.strength = strength;
+        this.delegate = new BCryptPasswordEncoder(strength);
+    }
+
+    /**
+     * Benchmarks this host and picks the highest cost between {@code minStrength} and
+     * {@code maxStrength} whose hash time stays within {@code targetHashMillis}.
+     */
+    public static AdaptiveBCryptPasswordEncoder forTargetHashTime(long targetHashMillis, int minStrength, int maxStrength) {
+        int strength = minStrength;
+
+        for (int candidate = minStrength; candidate <= maxStrength; candidate++) {
+            long millis = benchmark(candidate);
+            log.info("BCrypt cost {} takes {} ms", candidate, millis);
+            if (millis > targetHashMillis) {
+                break;
+            }
+            strength = candidate;
+        }
+
+        log.info("Using BCrypt cost {} for a target hash time of {} ms", strength, targetHashMillis);
+        return new AdaptiveBCryptPasswordEncoder(strength);
+    }
+
+    private static long benchmark(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        encoder.encode(BENCHMARK_PASSWORD);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            long start = System.nanoTime();
+            encoder.encode(BENCHMARK_PASSWORD);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        if (!matcher.matches()) {
+            return false;
+        }
+
+        return Integer.parseInt(matcher.group(2)) < strength;
+    }
+}
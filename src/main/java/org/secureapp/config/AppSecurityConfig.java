@@ -1,7 +1,10 @@
 package org.secureapp.config;
 
+import org.secureapp.cache.LoginVerificationCache;
 import org.secureapp.filter.JwtAuthenticationFilter;
+import org.secureapp.filter.LoginRateLimitFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -11,7 +14,7 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
@@ -22,27 +25,59 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private LoginVerificationCache loginVerificationCache;
+
+    @Value("${password.encoder.mode:fixed}")
+    private String passwordEncoderMode;
+
+    @Value("${password.encoder.strength:10}")
+    private int passwordEncoderStrength;
+
+    @Value("${password.encoder.target-hash-millis:50}")
+    private long targetHashMillis;
+
+    @Value("${password.encoder.min-strength:8}")
+    private int minPasswordEncoderStrength;
+
+    @Value("${password.encoder.max-strength:14}")
+    private int maxPasswordEncoderStrength;
+
     @Override
     public void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder());
+        CachingDaoAuthenticationProvider authenticationProvider =
+                new CachingDaoAuthenticationProvider(loginVerificationCache);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setUserDetailsPasswordService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder());
+        auth.authenticationProvider(authenticationProvider);
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.cors().and().csrf().disable()
                 .authorizeRequests()
-                .antMatchers("/user/register", "/user/login").permitAll()
+                .antMatchers("/user/register", "/user/login", "/user/refresh", "/.well-known/jwks.json").permitAll()
                 .anyRequest().authenticated()
                 .and()
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
 
+        http.addFilterBefore(loginRateLimitFilterBean(),
+                UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(authenticationTokenFilterBean(),
                 UsernamePasswordAuthenticationFilter.class);
     }
 
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder() {
+        AdaptiveBCryptPasswordEncoder encoder = "adaptive".equalsIgnoreCase(passwordEncoderMode)
+                ? AdaptiveBCryptPasswordEncoder.forTargetHashTime(
+                        targetHashMillis, minPasswordEncoderStrength, maxPasswordEncoderStrength)
+                : new AdaptiveBCryptPasswordEncoder(passwordEncoderStrength);
+        return new BoundedPasswordEncoder(encoder, passwordHashingExecutor);
     }
 
     @Override
@@ -56,5 +91,10 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter {
         return new JwtAuthenticationFilter();
     }
 
+    @Bean
+    public LoginRateLimitFilter loginRateLimitFilterBean() {
+        return new LoginRateLimitFilter();
+    }
+
 
 }
@@ -0,0 +1,45 @@
+package org.secureapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Gives the streamed user listing and export a request timeout of their own
+ * (user.stream.request-timeout), long enough to download the whole table. Every other
+ * async request keeps the default timeout.
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    private static final Set<String> STREAMING_PATHS =
+            new HashSet<>(Arrays.asList("/user/getallusers/stream", "/user/export"));
+
+    @Value("${user.stream.request-timeout:3600000}")
+    private long streamingTimeoutMillis;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                // Runs before async processing starts, while the timeout can still be changed
+                HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+                if (request instanceof AsyncWebRequest && servletRequest != null
+                        && STREAMING_PATHS.contains(servletRequest.getServletPath())) {
+                    ((AsyncWebRequest) request).setTimeout(streamingTimeoutMillis);
+                }
+            }
+        });
+    }
+}
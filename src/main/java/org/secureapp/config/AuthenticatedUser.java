@@ -0,0 +1,13 @@
+package org.secureapp.config;
+
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Principal stored in the security context for authenticated requests, either
+ * loaded from the database ({@link SecuredUserDetails}) or rebuilt from the JWT
+ * claims ({@link TokenUserDetails}).
+ */
+public interface AuthenticatedUser extends UserDetails {
+
+    Long getUserId();
+}
@@ -0,0 +1,36 @@
+package org.secureapp.config;
+
+import org.secureapp.cache.LoginVerificationCache;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * {@link DaoAuthenticationProvider} that consults the {@link LoginVerificationCache}
+ * before running the password encoder, and records successful verifications in it.
+ */
+public class CachingDaoAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final LoginVerificationCache loginVerificationCache;
+
+    public CachingDaoAuthenticationProvider(LoginVerificationCache loginVerificationCache) {
+        this.loginVerificationCache = loginVerificationCache;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        Object credentials = authentication.getCredentials();
+        String storedHash = userDetails.getPassword();
+
+        if (credentials != null && storedHash != null
+                && loginVerificationCache.isVerified(userDetails.getUsername(), credentials.toString(), storedHash)) {
+            return;
+        }
+
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        loginVerificationCache.markVerified(userDetails.getUsername(), credentials.toString(), storedHash);
+    }
+}
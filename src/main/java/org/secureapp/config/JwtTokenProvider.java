@@ -1,52 +1,157 @@
 package org.secureapp.config;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.cache.RevokedTokenCache;
+import org.secureapp.cache.TokenRevocationCache;
 import org.secureapp.model.TokenStore;
 import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.service.RoleService;
 import org.secureapp.util.LoggedInUserHelper;
+import org.secureapp.util.TokenDigest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
+@Slf4j
 public class JwtTokenProvider implements Serializable {
 
+    public static final String USER_ID_KEY = "uid";
+
+    public static final String CLAIMS_AUTHENTICATION_MODE = "claims";
+
+    public static final String ROLE_MASK_KEY = "rm";
+
     @Value("${jwt.token.validity}")
     public long TOKEN_VALIDITY;
 
+    @Value("${jwt.revocation.retention:${jwt.token.validity}}")
+    public long REVOCATION_RETENTION;
+
     @Value("${jwt.signing.key}")
     public String SIGNING_KEY;
 
+    /* Optional file holding the HMAC key, takes precedence over jwt.signing.key and can be replaced at runtime */
+    @Value("${jwt.signing.key-file:}")
+    public String SIGNING_KEY_FILE;
+
     @Value("${jwt.authorities.key}")
     public String AUTHORITIES_KEY;
 
     @Value("${jwt.token.prefix}")
     public String TOKEN_PREFIX;
 
+    @Value("${jwt.authentication.mode:database}")
+    public String AUTHENTICATION_MODE;
+
+    @Value("${jwt.claims.compact:false}")
+    public boolean COMPACT_CLAIMS;
+
     @Autowired
     BlackListedTokenRepository blackListedTokenRepository;
 
     @Autowired
     LoggedInUserHelper loggedInUserHelper;
 
+    @Autowired
+    RevokedTokenCache revokedTokenCache;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    RsaKeyManager rsaKeyManager;
+
+    @Autowired
+    RoleService roleService;
+
+    private transient volatile SigningKeys signingKeys;
+
+    private transient JwtParser rsaParser;
+
+    @PostConstruct
+    public void init() {
+        signingKeys = new SigningKeys(SIGNING_KEY_FILE.isEmpty() ? SIGNING_KEY : readSigningKeyFile());
+        rsaParser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        Key key = rsaKeyManager.getPublicKey(header.getKeyId());
+                        if (key == null) {
+                            throw new UnsupportedJwtException("Unknown signing key id " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Re-reads jwt.signing.key-file and swaps the signing key and parser when its
+     * content has changed. Tokens signed with the previous key stop validating. Without
+     * a key file there is nothing to reload, jwt.signing.key is fixed for the lifetime
+     * of the process.
+     */
+    @Scheduled(fixedDelayString = "${jwt.signing.key.reload.interval:60000}")
+    public void reloadSigningKey() {
+        if (SIGNING_KEY_FILE.isEmpty()) {
+            return;
+        }
+
+        String signingKey;
+        try {
+            signingKey = readSigningKeyFile();
+        } catch (IllegalStateException e) {
+            log.error("Could not reload the signing key, keeping the current one", e);
+            return;
+        }
+
+        if (!signingKey.equals(signingKeys.rawKey)) {
+            log.info("{} changed, reloading signing key", SIGNING_KEY_FILE);
+            signingKeys = new SigningKeys(signingKey);
+        }
+    }
+
+    private String readSigningKeyFile() {
+        try {
+            return new String(Files.readAllBytes(Paths.get(SIGNING_KEY_FILE)), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read signing key file " + SIGNING_KEY_FILE, e);
+        }
+    }
+
     public String getUsernameFromToken(String token) {
         return getClaimFromToken(token, Claims::getSubject);
     }
@@ -61,97 +166,186 @@ public class JwtTokenProvider implements Serializable {
     }
 
     private Claims getAllClaimsFromToken(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(SIGNING_KEY.getBytes(StandardCharsets.UTF_8));
-
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
+        JwtParser parser = rsaKeyManager.isEnabled() ? rsaParser : signingKeys.parser;
+        return parser
                 .parseClaimsJws(token)
                 .getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
-    }
-
     public String generateToken(Authentication authentication) {
-        String authorities = authentication.getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority)
-                .collect(Collectors.joining(","));
+        JwtBuilder builder = Jwts.builder()
+                .setId(newTokenId())
+                .setSubject(authentication.getName());
+
+        long roleMask = COMPACT_CLAIMS ? roleService.getRoleMask(authentication.getAuthorities()) : -1;
+        if (roleMask >= 0) {
+            builder.claim(ROLE_MASK_KEY, roleMask);
+        } else {
+            builder.claim(AUTHORITIES_KEY, authentication.getAuthorities().stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .collect(Collectors.joining(",")));
+        }
+
+        if (authentication.getPrincipal() instanceof AuthenticatedUser) {
+            builder.claim(USER_ID_KEY, ((AuthenticatedUser) authentication.getPrincipal()).getUserId());
+        }
 
-        SecretKey key = Keys.hmacShaKeyFor(SIGNING_KEY.getBytes(StandardCharsets.UTF_8));
+        // Nothing reads iat, compact tokens leave it out
+        if (!COMPACT_CLAIMS) {
+            builder.setIssuedAt(new Date(System.currentTimeMillis()));
+        }
+        builder.setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY * 1000));
 
-        return Jwts.builder()
-                .setSubject(authentication.getName())
-                .claim(AUTHORITIES_KEY, authorities)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY * 1000))
-                .signWith(key)
-                .compact();
+        if (rsaKeyManager.isEnabled()) {
+            return rsaKeyManager.signWithCurrentKey(builder).compact();
+        }
+        return builder.signWith(signingKeys.key).compact();
     }
 
-    public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    /**
+     * Verifies the signature of the given token and parses its claims. The returned
+     * {@link ParsedToken} is meant to be reused for all the checks done on a request.
+     */
+    public ParsedToken parseToken(String token) {
+        return new ParsedToken(token, getAllClaimsFromToken(token));
     }
 
-    public UsernamePasswordAuthenticationToken getAuthenticationToken(final String token, final Authentication existingAuth, final UserDetails userDetails) {
+    public Boolean validateToken(ParsedToken parsedToken, UserDetails userDetails) {
+        final String username = parsedToken.getUsername();
+        return (username.equals(userDetails.getUsername()) && !parsedToken.isExpired());
+    }
 
-        SecretKey key = Keys.hmacShaKeyFor(SIGNING_KEY.getBytes(StandardCharsets.UTF_8));
+    public UsernamePasswordAuthenticationToken getAuthenticationToken(final ParsedToken parsedToken, final UserDetails userDetails) {
 
-        final JwtParser jwtParser = Jwts.parserBuilder().setSigningKey(key).build();
+        final Collection<? extends GrantedAuthority> authorities = userDetails instanceof TokenUserDetails
+                ? userDetails.getAuthorities()
+                : getAuthoritiesFromClaims(parsedToken.getClaims());
 
-        final Jws<Claims> claimsJws = jwtParser.parseClaimsJws(token);
+        if (userDetails instanceof AuthenticatedUser) {
+            return new UserAuthenticationToken((AuthenticatedUser) userDetails, authorities);
+        }
 
-        final Claims claims = claimsJws.getBody();
+        return new UsernamePasswordAuthenticationToken(userDetails, "", authorities);
+    }
 
-        final Collection<? extends GrantedAuthority> authorities =
-                Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-                        .map(SimpleGrantedAuthority::new)
-                        .collect(Collectors.toList());
+    public boolean isClaimsOnlyMode() {
+        return CLAIMS_AUTHENTICATION_MODE.equalsIgnoreCase(AUTHENTICATION_MODE);
+    }
 
-        return new UsernamePasswordAuthenticationToken(userDetails, "", authorities);
+    /**
+     * Builds the principal from the token claims alone, without loading the user.
+     * Returns null for tokens issued before the user id claim was added.
+     */
+    public TokenUserDetails getUserDetailsFromClaims(ParsedToken parsedToken) {
+        final Claims claims = parsedToken.getClaims();
+        final Number userId = claims.get(USER_ID_KEY, Number.class);
+
+        if (userId == null) {
+            return null;
+        }
+
+        return new TokenUserDetails(userId.longValue(), claims.getSubject(), getAuthoritiesFromClaims(claims));
     }
 
-    public boolean checkIfTokenBlackListed(String token) {
-        if (token != null) {
-            String userName = getUsernameFromToken(token);
-            TokenStore tokenStore = blackListedTokenRepository.findByToken(token);
+    /**
+     * Reads the role mask of compact tokens, or the comma separated role names of
+     * tokens issued without compact claims. Both resolve to the shared authority
+     * instances of the role registry.
+     */
+    private Collection<? extends GrantedAuthority> getAuthoritiesFromClaims(Claims claims) {
+        Number roleMask = claims.get(ROLE_MASK_KEY, Number.class);
+        if (roleMask != null) {
+            return roleService.getAuthorities(roleMask.longValue());
+        }
+
+        String[] roles = claims.get(AUTHORITIES_KEY).toString().split(",");
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.length);
+        for (String role : roles) {
+            authorities.add(roleService.getAuthority(role));
+        }
+        return authorities;
+    }
 
-            if (tokenStore != null) {
-                String tokenFromDb = tokenStore.getToken();
+    private String newTokenId() {
+        UUID uuid = UUID.randomUUID();
+        if (!COMPACT_CLAIMS) {
+            return uuid.toString();
+        }
 
-                return token.equals(tokenFromDb);
-            }
+        ByteBuffer bytes = ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
 
+    public boolean checkIfTokenBlackListed(ParsedToken parsedToken) {
+        if (parsedToken != null) {
+            return tokenRevocationCache.isRevoked(parsedToken.getUsername(), getIssuedAt(parsedToken))
+                    || revokedTokenCache.isRevoked(parsedToken.getToken());
         }
 
         return false;
     }
 
+    /*
+     * Compact tokens carry no iat, derive it from the expiry. The longest lifetime still
+     * in circulation is used, so a token issued under a longer jwt.token.validity is
+     * never taken for newer than it is.
+     */
+    private Date getIssuedAt(ParsedToken parsedToken) {
+        Date issuedAt = parsedToken.getClaims().getIssuedAt();
+        return issuedAt != null ? issuedAt : new Date(parsedToken.getExpiration().getTime() - REVOCATION_RETENTION * 1000);
+    }
+
     public void blackListTokenOnLogout(String token) {
-        TokenStore tokenStore = new TokenStore();
         token = token.replace(TOKEN_PREFIX, "").trim();
         if (token != null) {
             String userName = getUsernameFromToken(token);
-            tokenStore.setToken(token);
-            tokenStore.setUsername(userName);
-            blackListedTokenRepository.save(tokenStore);
+            blackListToken(token, userName);
         }
     }
 
     public void blackListTokenOnDelete(String token, String userName) {
-        TokenStore tokenStore = new TokenStore();
         token = token.replace(TOKEN_PREFIX, "").trim();
         if (token != null) {
 
             if (userName.equalsIgnoreCase(loggedInUserHelper.getCurrentLoggedInUserName())) {
-                tokenStore.setToken(token);
-                tokenStore.setUsername(userName);
+                blackListToken(token, userName);
+            }
+        }
+    }
+
+    private void blackListToken(String token, String userName) {
+        byte[] tokenDigest = TokenDigest.sha256(token);
+
+        if (!blackListedTokenRepository.existsByTokenDigest(tokenDigest)) {
+            TokenStore tokenStore = new TokenStore();
+            tokenStore.setTokenDigest(tokenDigest);
+            tokenStore.setUsername(userName);
+            tokenStore.setExpiresAt(getExpirationDateFromToken(token).toInstant());
+            try {
                 blackListedTokenRepository.save(tokenStore);
+            } catch (DataIntegrityViolationException e) {
+                log.info("Token was already black listed by a concurrent request");
             }
         }
+        revokedTokenCache.markRevoked(tokenDigest);
+    }
+
+    /**
+     * Key material and parser are built once per signing key. The parser is immutable
+     * and thread safe; builders are not, so a new one is still created per token.
+     */
+    private static final class SigningKeys {
+        private final String rawKey;
+        private final SecretKey key;
+        private final JwtParser parser;
+
+        private SigningKeys(String rawKey) {
+            this.rawKey = rawKey;
+            this.key = Keys.hmacShaKeyFor(rawKey.getBytes(StandardCharsets.UTF_8));
+            this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package org.secureapp.config;
+
+import io.jsonwebtoken.Claims;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * A JWT whose signature has already been verified, together with its claims.
+ * Produced once per request by {@link JwtTokenProvider#parseToken(String)} so the
+ * filter, the black list check and the authority extraction don't re-parse the token.
+ */
+@AllArgsConstructor
+@Getter
+public class ParsedToken {
+
+    private final String token;
+
+    private final Claims claims;
+
+    public String getUsername() {
+        return claims.getSubject();
+    }
+
+    public Date getExpiration() {
+        return claims.getExpiration();
+    }
+
+    public boolean isExpired() {
+        return getExpiration().before(new Date());
+    }
+}
@@ -0,0 +1,159 @@
+package org.secureapp.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.exception.ServiceUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing on a small fixed pool with a bounded queue, so a burst of
+ * logins/registrations can only ever occupy that many cores. Work that doesn't fit
+ * in the queue, or doesn't finish in time, fails fast with a 503.
+ * <p>
+ * BCrypt ignores interrupts, so a timed out hash keeps its thread until it completes.
+ * A semaphore of threads + queue-capacity permits, each released only when its task
+ * completes (or is withdrawn before it starts), bounds the total in-flight work
+ * including such abandoned hashes.
+ */
+@Component
+@Slf4j
+public class PasswordHashingExecutor {
+
+    private static final String BUSY_MESSAGE = "Server is busy, please retry later";
+
+    @Value("${password.hashing.threads:0}")
+    private int threads;
+
+    @Value("${password.hashing.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${password.hashing.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private Semaphore inFlight;
+
+    private Timer hashTimer;
+
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        inFlight = new Semaphore(poolSize + queueCapacity);
+
+        hashTimer = Timer.builder("password.hashing.duration").register(meterRegistry);
+        rejectedCounter = Counter.builder("password.hashing.rejected").register(meterRegistry);
+        Gauge.builder("password.hashing.queue.size", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.in-flight", this, e -> poolSize + queueCapacity - e.inFlight.availablePermits())
+                .register(meterRegistry);
+        log.info("Password hashing executor started with {} threads and queue capacity {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public <T> T execute(Callable<T> task) {
+        if (!inFlight.tryAcquire()) {
+            rejectedCounter.increment();
+            log.warn("Too many password hashes in flight");
+            throw new ServiceUnavailableException(BUSY_MESSAGE);
+        }
+
+        // Claimed by whichever comes first: the worker starting the task, or the caller
+        // withdrawing it. The claimant releases the permit.
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return hashTimer.recordCallable(task);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            rejectedCounter.increment();
+            log.warn("Password hashing queue is full");
+            throw new ServiceUnavailableException(BUSY_MESSAGE);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            withdraw(future, claimed);
+            rejectedCounter.increment();
+            log.warn("Password hashing timed out");
+            throw new ServiceUnavailableException(BUSY_MESSAGE);
+        } catch (InterruptedException e) {
+            withdraw(future, claimed);
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(BUSY_MESSAGE);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Drops a task that hasn't started yet; a running one can't be stopped and keeps
+     * its permit until it completes.
+     */
+    private void withdraw(Future<?> future, AtomicBoolean claimed) {
+        if (claimed.compareAndSet(false, true)) {
+            inFlight.release();
+            future.cancel(false);
+        }
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hashing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.secureapp.config;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ResourceUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RSA key pairs used when jwt.signing.algorithm is RS256, loaded from a PKCS12
+ * keystore shared by all instances, so every node signs with and publishes the same
+ * keys. The alias of a key entry is its kid and the notBefore of its certificate is
+ * when it was introduced. All keys in the keystore are published and accepted. New
+ * tokens are signed with the newest key whose notBefore is at least
+ * jwt.rsa.key.publish-delay seconds in the past, so verifiers holding a cached JWKS
+ * already know a key before the first token signed with it reaches them.
+ * <p>
+ * To rotate, add a key whose notBefore is in the future (keytool -startdate) and let
+ * the keystore reload everywhere; remove the previous key once tokens signed with it
+ * have expired.
+ */
+@Component
+@Slf4j
+public class RsaKeyManager {
+
+    public static final String RS256 = "RS256";
+
+    private static final String KEYSTORE_TYPE = "PKCS12";
+
+    @Value("${jwt.signing.algorithm:HS256}")
+    private String signingAlgorithm;
+
+    @Value("${jwt.rsa.keystore.location:}")
+    private String keystoreLocation;
+
+    @Value("${jwt.rsa.keystore.password:}")
+    private String keystorePassword;
+
+    @Value("${jwt.rsa.key.publish-delay:${jwt.jwks.cache-max-age:300}}")
+    private long publishDelaySeconds;
+
+    /* Ordered by notBefore, oldest first */
+    private volatile List<SigningKey> keys = Collections.emptyList();
+
+    @PostConstruct
+    public void init() {
+        if (isEnabled()) {
+            keys = loadKeys();
+            log.info("Loaded {} RSA signing keys", keys.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return RS256.equalsIgnoreCase(signingAlgorithm);
+    }
+
+    /**
+     * Re-reads the keystore to pick up added or removed keys. A keystore that can't be
+     * read leaves the current keys in place.
+     */
+    @Scheduled(fixedDelayString = "${jwt.rsa.keystore.reload-interval:60000}",
+            initialDelayString = "${jwt.rsa.keystore.reload-interval:60000}")
+    public void reload() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            List<SigningKey> loaded = loadKeys();
+            if (loaded.size() != keys.size()) {
+                log.info("Reloaded RSA signing keys, {} keys published", loaded.size());
+            }
+            keys = loaded;
+        } catch (IllegalStateException e) {
+            log.error("Could not reload the RSA signing keys, keeping the current ones", e);
+        }
+    }
+
+    /**
+     * Signs the token being built with the current key and sets its kid header.
+     */
+    public JwtBuilder signWithCurrentKey(JwtBuilder builder) {
+        SigningKey key = getCurrentKey(keys, Instant.now());
+        return builder
+                .setHeaderParam(JwsHeader.KEY_ID, key.kid)
+                .signWith(key.privateKey, SignatureAlgorithm.RS256);
+    }
+
+    /**
+     * Returns the public key with the given id, or null if it is not in the keystore.
+     */
+    public PublicKey getPublicKey(String kid) {
+        for (SigningKey key : keys) {
+            if (key.kid.equals(kid)) {
+                return key.publicKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The published keys as a JSON Web Key Set (RFC 7517).
+     */
+    public Map<String, Object> getJwks() {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+
+        for (SigningKey key : keys) {
+            RSAPublicKey publicKey = key.publicKey;
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("use", "sig");
+            jwk.put("alg", RS256);
+            jwk.put("kid", key.kid);
+            jwk.put("n", base64Url(publicKey.getModulus()));
+            jwk.put("e", base64Url(publicKey.getPublicExponent()));
+            jwks.add(jwk);
+        }
+
+        return Collections.singletonMap("keys", jwks);
+    }
+
+    /* The newest key published for long enough, or the oldest one if none is yet */
+    private SigningKey getCurrentKey(List<SigningKey> keys, Instant now) {
+        Instant publishedBefore = now.minusSeconds(publishDelaySeconds);
+        SigningKey current = keys.get(0);
+
+        for (SigningKey key : keys) {
+            if (!key.notBefore.isAfter(publishedBefore)) {
+                current = key;
+            }
+        }
+
+        return current;
+    }
+
+    private List<SigningKey> loadKeys() {
+        if (keystoreLocation.isEmpty()) {
+            throw new IllegalStateException("jwt.rsa.keystore.location is required with RS256 signing");
+        }
+
+        try (InputStream inputStream = ResourceUtils.getURL(keystoreLocation).openStream()) {
+            char[] password = keystorePassword.toCharArray();
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+            keyStore.load(inputStream, password);
+
+            List<SigningKey> loaded = new ArrayList<>();
+            for (String alias : Collections.list(keyStore.aliases())) {
+                Key key = keyStore.isKeyEntry(alias) ? keyStore.getKey(alias, password) : null;
+                Certificate certificate = keyStore.getCertificate(alias);
+                if (!(key instanceof RSAPrivateKey) || !(certificate instanceof X509Certificate)) {
+                    log.warn("Skipping keystore entry {}, not an RSA key pair", alias);
+                    continue;
+                }
+
+                X509Certificate x509Certificate = (X509Certificate) certificate;
+                loaded.add(new SigningKey(alias, (PrivateKey) key, (RSAPublicKey) x509Certificate.getPublicKey(),
+                        x509Certificate.getNotBefore().toInstant()));
+            }
+
+            if (loaded.isEmpty()) {
+                throw new IllegalStateException("No RSA keys found in " + keystoreLocation);
+            }
+            loaded.sort(Comparator.comparing((SigningKey signingKey) -> signingKey.notBefore));
+            return Collections.unmodifiableList(loaded);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Could not load RSA keys from " + keystoreLocation, e);
+        }
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // Drop the sign byte BigInteger adds to positive values with the high bit set
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] unsigned = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, unsigned, 0, unsigned.length);
+            bytes = unsigned;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static final class SigningKey {
+        private final String kid;
+        private final PrivateKey privateKey;
+        private final RSAPublicKey publicKey;
+        private final Instant notBefore;
+
+        private SigningKey(String kid, PrivateKey privateKey, RSAPublicKey publicKey, Instant notBefore) {
+            this.kid = kid;
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -4,22 +4,21 @@ import org.secureapp.model.Role;
 import org.secureapp.model.User;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
-public class SecuredUserDetails implements UserDetails {
+public class SecuredUserDetails implements AuthenticatedUser {
     private final User user;
 
+    private final List<SimpleGrantedAuthority> authorities;
+
     public SecuredUserDetails(User user) {
         this.user = user;
-    }
 
-    @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
         Set<Role> roles = user.getRoles();
         List<SimpleGrantedAuthority> authorities = new ArrayList<>();
 
@@ -27,6 +26,11 @@ public class SecuredUserDetails implements UserDetails {
             authorities.add(new SimpleGrantedAuthority(role.getName()));
         }
 
+        this.authorities = Collections.unmodifiableList(authorities);
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
     }
 
@@ -60,6 +64,7 @@ public class SecuredUserDetails implements UserDetails {
         return true;
     }
 
+    @Override
     public Long getUserId() {
         return user.getId();
     }
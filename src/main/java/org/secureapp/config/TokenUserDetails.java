@@ -0,0 +1,60 @@
+package org.secureapp.config;
+
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Lightweight principal built from the claims of a verified JWT, used when
+ * jwt.authentication.mode=claims so authenticated requests don't query the user table.
+ */
+@AllArgsConstructor
+public class TokenUserDetails implements AuthenticatedUser {
+
+    private final Long userId;
+
+    private final String username;
+
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Long getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,42 @@
+package org.secureapp.config;
+
+import org.secureapp.util.TextNormalizer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+import static org.secureapp.util.ApplicationConstants.ROLE_ADMIN;
+
+/**
+ * Authentication set by {@code JwtAuthenticationFilter}. The values the service layer
+ * asks for on every call (admin flag, user id, normalized username) are resolved once
+ * when the request is authenticated, so later role checks are plain field reads.
+ */
+public class UserAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private final Long userId;
+
+    private final String normalizedUsername;
+
+    private final boolean admin;
+
+    public UserAuthenticationToken(AuthenticatedUser principal, Collection<? extends GrantedAuthority> authorities) {
+        super(principal, "", authorities);
+        this.userId = principal.getUserId();
+        this.normalizedUsername = TextNormalizer.normalize(principal.getUsername());
+        this.admin = authorities.stream().anyMatch(role -> ROLE_ADMIN.equals(role.getAuthority()));
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getNormalizedUsername() {
+        return normalizedUsername;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+}
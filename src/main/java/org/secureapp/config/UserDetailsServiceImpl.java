@@ -1,29 +1,72 @@
 package org.secureapp.config;
 
+import org.secureapp.cache.LoginVerificationCache;
+import org.secureapp.cache.UserDetailsCache;
 import org.secureapp.model.User;
 import org.secureapp.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import static org.secureapp.util.TextNormalizer.normalize;
+
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private LoginVerificationCache loginVerificationCache;
+
+    /**
+     * Always reads the user from the database (used for login) and refreshes the
+     * cached entry used by {@link #loadUserByUsernameCached(String)}.
+     */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsernameIgnoreCase(username);
+        User user = userRepository.findByNormalizedUsername(normalize(username));
 
 
         if (user == null) {
             throw new UsernameNotFoundException("User not found");
         }
 
-        return new SecuredUserDetails(user);
+        SecuredUserDetails userDetails = new SecuredUserDetails(user);
+        userDetailsCache.put(userDetails);
+        return userDetails;
+    }
+
+    /**
+     * Resolves the user of an already authenticated request, served from
+     * {@link UserDetailsCache} while the entry is fresh.
+     */
+    public UserDetails loadUserByUsernameCached(String username) throws UsernameNotFoundException {
+        SecuredUserDetails userDetails = userDetailsCache.get(username);
+
+        if (userDetails != null) {
+            return userDetails;
+        }
+
+        return loadUserByUsername(username);
+    }
+
+    /**
+     * Called after a successful login whose stored hash was created with a different
+     * cost than the current encoder's, with the password re-hashed at that cost.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(normalize(user.getUsername()), newPassword);
+        userDetailsCache.invalidate(user.getUsername());
+        loginVerificationCache.invalidate(user.getUsername());
+        return loadUserByUsername(user.getUsername());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package org.secureapp.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.config.RsaKeyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@Slf4j
+public class JwksController {
+
+    @Value("${jwt.jwks.cache-max-age:300}")
+    private long cacheMaxAge;
+
+    @Autowired
+    RsaKeyManager rsaKeyManager;
+
+    /* Public keys other services use to verify RS256 tokens locally; empty in HS256 mode */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        log.info("In getJwks");
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(cacheMaxAge, TimeUnit.SECONDS).cachePublic())
+                .body(rsaKeyManager.getJwks());
+    }
+
+}
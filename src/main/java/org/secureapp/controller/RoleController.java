@@ -0,0 +1,27 @@
+package org.secureapp.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.service.RoleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/role")
+@Slf4j
+public class RoleController {
+
+    @Autowired
+    RoleService roleService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/refresh")
+    public String refreshRoles() {
+        log.info("In refreshRoles");
+        roleService.refresh();
+        return "REFRESH_SUCCESS";
+    }
+
+}
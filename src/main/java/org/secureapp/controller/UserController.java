@@ -2,14 +2,29 @@ package org.secureapp.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.secureapp.config.JwtTokenProvider;
+import org.secureapp.dto.BulkImportReport;
+import org.secureapp.dto.BulkOperationReport;
+import org.secureapp.dto.BulkRoleAssignment;
+import org.secureapp.dto.BulkUserSelection;
 import org.secureapp.dto.UserDto;
+import org.secureapp.dto.UserPage;
+import org.secureapp.dto.UserSearchPage;
 import org.secureapp.dto.UserUpdateDto;
+import org.secureapp.exception.PreconditionRequiredException;
 import org.secureapp.model.AuthToken;
 import org.secureapp.model.LoginUser;
+import org.secureapp.model.RefreshTokenRequest;
 import org.secureapp.model.User;
+import org.secureapp.service.RefreshTokenService;
+import org.secureapp.service.UserBulkService;
+import org.secureapp.service.UserImportService;
 import org.secureapp.service.UserService;
 import org.secureapp.util.LoggedInUserHelper;
+import org.secureapp.util.UserETag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,9 +34,15 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -30,9 +51,24 @@ import java.util.List;
 @Slf4j
 public class UserController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String CSV_VALUE = "text/csv";
+
+    private static final String GZIP_VALUE = "application/gzip";
+
     @Autowired
     UserService userService;
 
+    @Autowired
+    RefreshTokenService refreshTokenService;
+
+    @Autowired
+    UserImportService userImportService;
+
+    @Autowired
+    UserBulkService userBulkService;
+
     @Autowired
     LoggedInUserHelper loggedInUserHelper;
     @Autowired
@@ -52,8 +88,15 @@ public class UserController {
         );
         SecurityContextHolder.getContext().setAuthentication(authentication);
         final String token = jwtTokenUtil.generateToken(authentication);
+        final String refreshToken = refreshTokenService.issue(authentication.getName());
         log.info("loginUser complete");
-        return ResponseEntity.ok(new AuthToken(token));
+        return ResponseEntity.ok(new AuthToken(token, refreshToken));
+    }
+
+    @PostMapping(value = "/refresh")
+    public ResponseEntity<?> refreshToken(@Valid @RequestBody RefreshTokenRequest refreshTokenRequest) {
+        log.info("In refreshToken");
+        return ResponseEntity.ok(refreshTokenService.refresh(refreshTokenRequest.getRefreshToken()));
     }
 
     @PostMapping(value = "/register")
@@ -64,16 +107,26 @@ public class UserController {
 
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @PutMapping("/update")
-    public User updateUser(@Valid @RequestBody UserUpdateDto userDto) {
+    public ResponseEntity<User> updateUser(
+            @Valid @RequestBody UserUpdateDto userDto,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
         log.info("In updateUser");
-        return userService.update(userDto);
+        if (ifMatch == null) {
+            throw new PreconditionRequiredException("If-Match header with the ETag from /user/getuser is required");
+        }
+
+        User user = userService.update(userDto, ifMatch);
+        return ResponseEntity.ok().eTag(UserETag.of(user)).body(user);
     }
 
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @GetMapping("/getuser")
-    public User getUser(@NotBlank @RequestParam String userName) {
+    public ResponseEntity<User> getUser(@NotBlank @RequestParam String userName) {
         log.info("In getUser {}", userName);
-        return userService.find(userName);
+        User user = userService.find(userName);
+        // Spring answers a matching If-None-Match with 304 and no body
+        return ResponseEntity.ok().eTag(UserETag.of(user)).body(user);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -83,6 +136,91 @@ public class UserController {
         return userService.findAllUsers();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/getusers")
+    public UserPage getUsers(
+            @RequestParam(required = false) Long cursor,
+            @Min(1) @RequestParam(required = false) Integer size,
+            @Pattern(regexp = "(?i)asc|desc") @RequestParam(defaultValue = "asc") String sort
+    ) {
+        log.info("In getUsers");
+        return userService.findUsers(cursor, size, sort);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/search")
+    public UserSearchPage searchUsers(
+            @Size(min = 1, max = 100) @RequestParam String q,
+            @Pattern(regexp = "(?i)username|email|firstname|lastname") @RequestParam(defaultValue = "username") String field,
+            @RequestParam(required = false) String role,
+            @Pattern(regexp = "\\d{1,18}:.*") @RequestParam(required = false) String cursor,
+            @Min(1) @RequestParam(required = false) Integer size
+    ) {
+        log.info("In searchUsers");
+        return userService.searchUsers(q, field, role, cursor, size);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(value = "/getallusers/stream", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        log.info("In streamAllUsers");
+        StreamingResponseBody body = outputStream -> userService.streamAllUsers(outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                .body(body);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @Pattern(regexp = "(?i)csv|ndjson") @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        log.info("In exportUsers");
+        boolean csv = "csv".equalsIgnoreCase(format);
+        StreamingResponseBody body = outputStream -> userService.exportUsers(outputStream, csv);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(GZIP_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(csv ? "users.csv.gz" : "users.ndjson.gz")
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping(value = "/bulk-import", consumes = {CSV_VALUE, NDJSON_VALUE})
+    public BulkImportReport bulkImportUsers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body
+    ) throws IOException {
+        log.info("In bulkImportUsers");
+        if (MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(CSV_VALUE))) {
+            return userImportService.importCsv(body);
+        }
+        return userImportService.importNdjson(body);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/bulk-delete")
+    public BulkOperationReport bulkDeleteUsers(@Valid @RequestBody BulkUserSelection selection) {
+        log.info("In bulkDeleteUsers");
+        return userBulkService.deleteUsers(selection);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/bulk-roles/grant")
+    public BulkOperationReport bulkGrantRole(@Valid @RequestBody BulkRoleAssignment assignment) {
+        log.info("In bulkGrantRole");
+        return userBulkService.grantRole(assignment);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/bulk-roles/revoke")
+    public BulkOperationReport bulkRevokeRole(@Valid @RequestBody BulkRoleAssignment assignment) {
+        log.info("In bulkRevokeRole");
+        return userBulkService.revokeRole(assignment);
+    }
+
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @DeleteMapping("/delete")
     public String deleteUser(
@@ -97,9 +235,19 @@ public class UserController {
 
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @DeleteMapping("/logout")
-    public String logout(@RequestHeader("Authorization") String authToken) {
+    public String logout(
+            @RequestHeader("Authorization") String authToken,
+            @RequestHeader(value = "Refresh-Token", required = false) String refreshToken
+    ) {
         log.info("In logout");
+        String userName = loggedInUserHelper.getCurrentLoggedInUserName();
         jwtTokenUtil.blackListTokenOnLogout(authToken);
+        /* Without the refresh token of this session, end all sessions of the user */
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken, userName);
+        } else {
+            refreshTokenService.revokeAll(userName);
+        }
         return "LOGOUT_SUCCESS";
     }
 
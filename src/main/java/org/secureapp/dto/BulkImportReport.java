@@ -0,0 +1,30 @@
+package org.secureapp.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor
+@Getter
+@Setter
+public class BulkImportReport {
+
+    private int imported;
+
+    private int failed;
+
+    private List<BulkImportRowResult> rows = new ArrayList<>();
+
+    public void imported(long line, String username) {
+        imported++;
+        rows.add(new BulkImportRowResult(line, username, BulkImportRowResult.IMPORTED, null));
+    }
+
+    public void failed(long line, String username, String message) {
+        failed++;
+        rows.add(new BulkImportRowResult(line, username, BulkImportRowResult.FAILED, message));
+    }
+}
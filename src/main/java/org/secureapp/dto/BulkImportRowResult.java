@@ -0,0 +1,26 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BulkImportRowResult {
+
+    public static final String IMPORTED = "IMPORTED";
+
+    public static final String FAILED = "FAILED";
+
+    /* Line of the row in the uploaded file, starting at 1 */
+    private long line;
+
+    private String username;
+
+    private String status;
+
+    private String message;
+}
@@ -0,0 +1,24 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BulkOperationReport {
+
+    /* Existing users matched by the selection, the calling admin is left out of deletes and role revokes */
+    private int matchedUsers;
+
+    /* Rows changed: users deleted, or role links added/removed */
+    private int affectedRows;
+
+    public void add(int matchedUsers, int affectedRows) {
+        this.matchedUsers += matchedUsers;
+        this.affectedRows += affectedRows;
+    }
+}
@@ -0,0 +1,16 @@
+package org.secureapp.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+
+@NoArgsConstructor
+@Getter
+@Setter
+public class BulkRoleAssignment extends BulkUserSelection {
+
+    @NotBlank
+    private String role;
+}
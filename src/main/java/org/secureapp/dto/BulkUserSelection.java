@@ -0,0 +1,34 @@
+package org.secureapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Users targeted by a bulk operation, either an explicit list of usernames or all
+ * users whose username starts with a prefix.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BulkUserSelection {
+
+    private List<String> usernames;
+
+    @Size(min = 1, max = 45, message = "Username prefix must be between 1 and 45 characters long")
+    private String usernamePrefix;
+
+    @JsonIgnore
+    @AssertTrue(message = "Either usernames or usernamePrefix must be given")
+    public boolean isSelectionValid() {
+        boolean hasUsernames = usernames != null && !usernames.isEmpty();
+        return hasUsernames != (usernamePrefix != null);
+    }
+}
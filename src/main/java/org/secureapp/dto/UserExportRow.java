@@ -0,0 +1,26 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class UserExportRow {
+
+    private String username;
+
+    private String firstname;
+
+    private String lastname;
+
+    private String email;
+
+    private List<String> roles = new ArrayList<>();
+}
@@ -0,0 +1,24 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.secureapp.model.User;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated user listing. {@code nextCursor} is passed back as
+ * the {@code cursor} parameter to fetch the following page and is null on the last page.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class UserPage {
+
+    private List<User> users;
+
+    private Long nextCursor;
+}
@@ -0,0 +1,27 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.secureapp.model.User;
+
+import java.util.function.Function;
+
+/**
+ * Columns a user search matches the query prefix against, each mapped to the
+ * lower-cased, indexed attribute of {@link User}. A search covers exactly one column
+ * so its page can be read as a single range of that column's index.
+ */
+@AllArgsConstructor
+@Getter
+public enum UserSearchField {
+
+    USERNAME("normalizedUsername", User::getNormalizedUsername),
+    EMAIL("normalizedEmail", User::getNormalizedEmail),
+    FIRSTNAME("normalizedFirstname", User::getNormalizedFirstname),
+    LASTNAME("normalizedLastname", User::getNormalizedLastname);
+
+    private final String attribute;
+
+    private final Function<User, String> value;
+}
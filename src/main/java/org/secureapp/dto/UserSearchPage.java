@@ -0,0 +1,25 @@
+package org.secureapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.secureapp.model.User;
+
+import java.util.List;
+
+/**
+ * One page of a user search. The search is ordered by the searched column, so
+ * {@code nextCursor} carries both the last user's id and its column value, as
+ * {@code <id>:<value>}; it is null on the last page.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class UserSearchPage {
+
+    private List<User> users;
+
+    private String nextCursor;
+}
@@ -2,6 +2,7 @@ package org.secureapp.exception;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -61,6 +62,11 @@ public class ExceptionController {
         return new ResponseEntity<>("Invalid username/password", HttpStatus.UNAUTHORIZED);
     }
 
+    @ExceptionHandler(value = InvalidTokenException.class)
+    public ResponseEntity<Object> exception(InvalidTokenException exception) {
+        return new ResponseEntity<>(exception.getMessage(), HttpStatus.UNAUTHORIZED);
+    }
+
     @ExceptionHandler(value = RecordAlreadyExistsException.class)
     public ResponseEntity<Object> exception(RecordAlreadyExistsException exception) {
         return new ResponseEntity<>(exception.getMessage(), HttpStatus.CONFLICT);
@@ -71,5 +77,26 @@ public class ExceptionController {
         return new ResponseEntity<>(exception.getMessage(), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(value = PreconditionRequiredException.class)
+    public ResponseEntity<Object> exception(PreconditionRequiredException exception) {
+        return new ResponseEntity<>(exception.getMessage(), HttpStatus.PRECONDITION_REQUIRED);
+    }
+
+    @ExceptionHandler(value = PreconditionFailedException.class)
+    public ResponseEntity<Object> exception(PreconditionFailedException exception) {
+        return new ResponseEntity<>(exception.getMessage(), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /* Another update committed between reading the user and writing it */
+    @ExceptionHandler(value = ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<Object> exception(ObjectOptimisticLockingFailureException exception) {
+        return new ResponseEntity<>("User has been modified, reload it and retry", HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler(value = ServiceUnavailableException.class)
+    public ResponseEntity<Object> exception(ServiceUnavailableException exception) {
+        return new ResponseEntity<>(exception.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
 
 }
@@ -2,6 +2,7 @@ package org.secureapp.filter;
 
 import io.jsonwebtoken.ExpiredJwtException;
 import org.secureapp.config.JwtTokenProvider;
+import org.secureapp.config.ParsedToken;
 import org.secureapp.config.UserDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -36,22 +37,27 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String header = req.getHeader(HEADER_STRING);
 
-        String username = null;
-        String authToken = null;
+        ParsedToken parsedToken = null;
+        UserDetails userDetails = null;
         if (header != null && header.startsWith(TOKEN_PREFIX)) {
-            authToken = header.replace(TOKEN_PREFIX, "");
+            String authToken = header.replace(TOKEN_PREFIX, "").trim();
 
             try {
-                if (authToken != null) {
-                    // Check if token is black listed
-                    if (jwtTokenUtil.checkIfTokenBlackListed(authToken.trim())) {
-                        res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                        return;
-                    }
+                // Verify the signature and parse the claims only once for this request
+                parsedToken = jwtTokenUtil.parseToken(authToken);
+
+                // Check if token is black listed
+                if (jwtTokenUtil.checkIfTokenBlackListed(parsedToken)) {
+                    res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    return;
                 }
 
-                username = jwtTokenUtil.getUsernameFromToken(authToken);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                if (jwtTokenUtil.isClaimsOnlyMode()) {
+                    userDetails = jwtTokenUtil.getUserDetailsFromClaims(parsedToken);
+                }
+                if (userDetails == null) {
+                    userDetails = userDetailsService.loadUserByUsernameCached(parsedToken.getUsername());
+                }
                 if (userDetails == null) {
                     throw new Exception();
                 }
@@ -75,14 +81,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                if (jwtTokenUtil.validateToken(authToken, userDetails)) {
-                    UsernamePasswordAuthenticationToken authentication = jwtTokenUtil.getAuthenticationToken(authToken, SecurityContextHolder.getContext().getAuthentication(), userDetails);
+                if (jwtTokenUtil.validateToken(parsedToken, userDetails)) {
+                    UsernamePasswordAuthenticationToken authentication = jwtTokenUtil.getAuthenticationToken(parsedToken, userDetails);
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
-                    logger.info("authenticated user " + username + ", setting security context");
+                    logger.info("authenticated user " + userDetails.getUsername() + ", setting security context");
                     SecurityContextHolder.getContext().setAuthentication(authentication);
                 }
             } catch (Exception e) {
@@ -97,7 +101,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     protected boolean shouldNotFilter(HttpServletRequest request) {
 
         return request.getRequestURI().equals("/user/register") ||
-                request.getRequestURI().equals("/user/login");
+                request.getRequestURI().equals("/user/login") ||
+                request.getRequestURI().equals("/user/refresh") ||
+                request.getRequestURI().equals("/.well-known/jwks.json");
 
 
     }
@@ -0,0 +1,146 @@
+package org.secureapp.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.util.ClientAddress;
+import org.secureapp.util.TokenBucketRateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Throttles /user/login and /user/register per client IP and per username before any
+ * password hashing happens. Rejected requests get a 429 with Retry-After, bodies over
+ * login.rate-limit.max-body-bytes a 413. IPv6 clients are throttled per /64. Behind a
+ * reverse proxy the client IP is only known when the forwarded headers are honored
+ * (server.forward-headers-strategy), otherwise all clients share the proxy's bucket.
+ */
+@Slf4j
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    @Value("${login.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${login.rate-limit.ip.capacity:50}")
+    private int ipCapacity;
+
+    @Value("${login.rate-limit.ip.refill-period-ms:200}")
+    private long ipRefillPeriodMillis;
+
+    @Value("${login.rate-limit.username.capacity:10}")
+    private int usernameCapacity;
+
+    @Value("${login.rate-limit.username.refill-period-ms:6000}")
+    private long usernameRefillPeriodMillis;
+
+    @Value("${login.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${login.rate-limit.max-body-bytes:4096}")
+    private int maxBodyBytes;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private TokenBucketRateLimiter ipRateLimiter;
+
+    private TokenBucketRateLimiter usernameRateLimiter;
+
+    private Counter ipRejectedCounter;
+
+    private Counter usernameRejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        ipRateLimiter = new TokenBucketRateLimiter(ipCapacity, ipRefillPeriodMillis, maxKeys);
+        usernameRateLimiter = new TokenBucketRateLimiter(usernameCapacity, usernameRefillPeriodMillis, maxKeys);
+        ipRejectedCounter = Counter.builder("login.rate_limit.rejected").tag("limit", "ip")
+                .register(meterRegistry);
+        usernameRejectedCounter = Counter.builder("login.rate_limit.rejected").tag("limit", "username")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain) throws IOException, ServletException {
+
+        long retryAfterMillis = ipRateLimiter.tryAcquire(ClientAddress.rateLimitKey(req.getRemoteAddr()));
+        if (retryAfterMillis > 0) {
+            ipRejectedCounter.increment();
+            reject(res, retryAfterMillis);
+            return;
+        }
+
+        CachedBodyHttpServletRequest request;
+        try {
+            request = new CachedBodyHttpServletRequest(req, maxBodyBytes);
+        } catch (CachedBodyHttpServletRequest.BodyTooLargeException e) {
+            log.warn("Rejected {} with a body over {} bytes", req.getServletPath(), maxBodyBytes);
+            res.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), e.getMessage());
+            return;
+        }
+        String username = readUsername(request.getBody());
+        if (username != null) {
+            retryAfterMillis = usernameRateLimiter.tryAcquire(normalize(username));
+            if (retryAfterMillis > 0) {
+                usernameRejectedCounter.increment();
+                reject(res, retryAfterMillis);
+                return;
+            }
+        }
+
+        chain.doFilter(request, res);
+    }
+
+    /* Runs off the request path, while a limiter is full its new keys share one overflow bucket */
+    @Scheduled(fixedDelayString = "${login.rate-limit.sweep-interval-ms:10000}")
+    public void evictExpiredBuckets() {
+        int evicted = ipRateLimiter.evictExpired() + usernameRateLimiter.evictExpired();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets", evicted);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getServletPath();
+        return !enabled
+                || !"POST".equals(request.getMethod())
+                || !("/user/login".equals(path) || "/user/register".equals(path));
+    }
+
+    private String readUsername(byte[] body) {
+        try {
+            JsonNode root = objectMapper.readTree(body);
+            JsonNode username = root == null ? null : root.get("username");
+            return username == null || !username.isTextual() ? null : username.asText();
+        } catch (IOException e) {
+            // Malformed bodies are left for the controller to reject
+            return null;
+        }
+    }
+
+    private void reject(HttpServletResponse res, long retryAfterMillis) throws IOException {
+        log.warn("Login rate limit exceeded");
+        res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000));
+        res.getWriter().write("Too many requests, please retry later");
+    }
+}
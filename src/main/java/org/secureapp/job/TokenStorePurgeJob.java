@@ -0,0 +1,137 @@
+package org.secureapp.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.cache.RevokedTokenCache;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.repository.RefreshTokenRepository;
+import org.secureapp.repository.TokenRevocationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Deletes black listed tokens whose JWT has expired, expired refresh tokens and token
+ * cutoffs older than the token lifetime (jwt.revocation.retention). An expired token is rejected anyway, so
+ * these rows are dead weight.
+ * Rows are deleted by primary key in small batches, each in its own transaction,
+ * so a sweep never holds long locks on the table. The black list filter is only
+ * rebuilt once enough of its entries are gone, see {@link RevokedTokenCache#rebuildIfStale()}.
+ */
+@Component
+@Slf4j
+public class TokenStorePurgeJob {
+
+    @Value("${jwt.revocation.retention:${jwt.token.validity}}")
+    private long revocationRetention;
+
+    @Value("${jwt.blacklist.purge.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${jwt.blacklist.purge.max-batches:100}")
+    private int maxBatches;
+
+    @Autowired
+    BlackListedTokenRepository blackListedTokenRepository;
+
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    RevokedTokenCache revokedTokenCache;
+
+    @Autowired
+    TokenRevocationRepository tokenRevocationRepository;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private Counter purgedRows;
+
+    private Counter purgedRefreshTokenRows;
+
+    private Timer sweepDuration;
+
+    @PostConstruct
+    public void init() {
+        purgedRows = Counter.builder("token_store.purge.rows")
+                .description("Expired black listed tokens deleted from token_store")
+                .register(meterRegistry);
+        purgedRefreshTokenRows = Counter.builder("refresh_token.purge.rows")
+                .description("Expired refresh tokens deleted from refresh_token")
+                .register(meterRegistry);
+        sweepDuration = Timer.builder("token_store.purge.duration")
+                .description("Duration of a token_store purge sweep")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.blacklist.purge.interval:600000}",
+            initialDelayString = "${jwt.blacklist.purge.interval:600000}")
+    public void purgeExpiredTokens() {
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+
+        int purged = purge(now, blackListedTokenRepository::findExpiredIds, blackListedTokenRepository::deleteByIdIn);
+        int purgedRefreshTokens = purge(now, refreshTokenRepository::findExpiredIds, refreshTokenRepository::deleteByIdIn);
+        // Once every token issued before a cutoff has expired the cutoff has no effect
+        Instant cutoffThreshold = now.minusSeconds(revocationRetention);
+        int purgedCutoffs = purge(cutoffThreshold, tokenRevocationRepository::findUsernamesOlderThan,
+                usernames -> tokenRevocationRepository.deleteOlderThan(usernames, cutoffThreshold));
+
+        // Other instances may have purged the rows, check the filter either way
+        revokedTokenCache.rebuildIfStale();
+
+        sweepDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (purged > 0) {
+            purgedRows.increment(purged);
+            log.info("Purged {} expired tokens from token_store", purged);
+        }
+        // Other instances may have purged the rows, evict from the cache either way
+        tokenRevocationCache.evictOlderThan(cutoffThreshold);
+        if (purgedCutoffs > 0) {
+            log.info("Purged {} expired token revocation cutoffs", purgedCutoffs);
+        }
+        if (purgedRefreshTokens > 0) {
+            purgedRefreshTokenRows.increment(purgedRefreshTokens);
+            log.info("Purged {} expired refresh tokens", purgedRefreshTokens);
+        }
+    }
+
+    private <K> int purge(Instant now,
+                          BiFunction<Instant, Pageable, List<K>> findExpiredIds,
+                          Function<List<K>, Integer> deleteByIdIn) {
+        int purged = 0;
+
+        for (int batch = 0; batch < maxBatches; batch++) {
+            List<K> expiredIds = findExpiredIds.apply(now, PageRequest.of(0, batchSize));
+            if (expiredIds.isEmpty()) {
+                break;
+            }
+
+            purged += deleteByIdIn.apply(expiredIds);
+
+            if (expiredIds.size() < batchSize) {
+                break;
+            }
+        }
+
+        return purged;
+    }
+}
@@ -11,4 +11,5 @@ import lombok.Setter;
 @Setter
 public class AuthToken {
     private String token;
+    private String refreshToken;
 }
\ No newline at end of file
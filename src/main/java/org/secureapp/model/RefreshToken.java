@@ -0,0 +1,42 @@
+package org.secureapp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "refresh_token")
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonIgnore
+    private Long id;
+
+    /* SHA-256 of the issued refresh token, the token itself is never stored */
+    @Column(name = "token_digest", length = 32, nullable = false, unique = true)
+    private byte[] tokenDigest;
+
+    /* Shared by the tokens rotated from the same login */
+    @Column(name = "family_id", length = 16, nullable = false)
+    private byte[] familyId;
+
+    /* Normalized username of the owner */
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /* Set when the token is rotated; the row is kept until it expires to detect reuse */
+    @Column(name = "consumed_at")
+    private Instant consumedAt;
+}
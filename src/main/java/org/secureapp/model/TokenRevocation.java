@@ -0,0 +1,30 @@
+package org.secureapp.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "token_revocation")
+public class TokenRevocation {
+
+    /* Normalized username */
+    @Id
+    @Column(name = "username", length = 45)
+    private String username;
+
+    /* Access tokens of the user issued at or before this instant are rejected */
+    @Column(name = "revoked_before", nullable = false)
+    private Instant revokedBefore;
+}
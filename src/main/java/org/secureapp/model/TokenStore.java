@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,9 +21,14 @@ public class TokenStore {
     @JsonIgnore
     private Long id;
 
-    @Column(name = "token")
-    private String token;
+    /* SHA-256 of the revoked JWT, see TokenDigest */
+    @Column(name = "token_digest", length = 32, nullable = false, unique = true)
+    private byte[] tokenDigest;
 
     @Column(name = "username")
     private String username;
+
+    /* Expiry of the revoked JWT, the row can be purged once it has passed */
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
 }
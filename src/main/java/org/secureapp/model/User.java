@@ -2,6 +2,8 @@ package org.secureapp.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.secureapp.util.TextNormalizer;
 
 import javax.persistence.*;
 import java.util.HashSet;
@@ -13,9 +15,17 @@ import java.util.Set;
 @Setter
 @Builder
 @Entity
-@Table(name = "user")
+@Table(name = "user", uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_UNIQUE_CONSTRAINT, columnNames = "username_normalized"),
+        @UniqueConstraint(name = User.EMAIL_UNIQUE_CONSTRAINT, columnNames = "email_normalized")
+})
 public class User {
 
+    /* Unique indexes created by V4, violated by a duplicate username/email */
+    public static final String USERNAME_UNIQUE_CONSTRAINT = "user_username_normalized_uk";
+
+    public static final String EMAIL_UNIQUE_CONSTRAINT = "user_email_normalized_uk";
+
     @Id
     @Column(name = "user_id")
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -31,10 +41,35 @@ public class User {
 
     private String email;
 
+    /* Lower-cased copies of username and email backing the unique indexes used for lookups */
+    @JsonIgnore
+    @Column(name = "username_normalized", nullable = false)
+    private String normalizedUsername;
+
+    @JsonIgnore
+    @Column(name = "email_normalized")
+    private String normalizedEmail;
+
+    /* Lower-cased names backing the prefix indexes used by the user search */
+    @JsonIgnore
+    @Column(name = "first_name_normalized")
+    private String normalizedFirstname;
+
+    @JsonIgnore
+    @Column(name = "last_name_normalized")
+    private String normalizedLastname;
+
     @JsonIgnore
     private String password;
 
+    /* Optimistic lock, also the basis of the ETag returned by /user/getuser */
+    @Version
+    @JsonIgnore
+    private Long version;
+
+    /* Loaded in batches when a list of users is read without a fetch join */
     @ManyToMany(cascade = CascadeType.DETACH, fetch = FetchType.EAGER)
+    @BatchSize(size = 100)
     @JoinTable(
             name = "user_roles",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -43,5 +78,13 @@ public class User {
     @JsonIgnore
     private Set<Role> roles = new HashSet<>();
 
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        normalizedUsername = TextNormalizer.normalize(username);
+        normalizedEmail = TextNormalizer.normalize(email);
+        normalizedFirstname = TextNormalizer.normalize(firstname);
+        normalizedLastname = TextNormalizer.normalize(lastname);
+    }
 
 }
@@ -1,11 +1,30 @@
 package org.secureapp.repository;
 
 import org.secureapp.model.TokenStore;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
 
 
 @Repository
 public interface BlackListedTokenRepository extends CrudRepository<TokenStore, Long> {
-    TokenStore findByToken(String token);
+    boolean existsByTokenDigest(byte[] tokenDigest);
+
+    @Query("select t from TokenStore t where t.id > :id order by t.id")
+    List<TokenStore> findNextPage(@Param("id") Long id, Pageable pageable);
+
+    @Query("select t.id from TokenStore t where t.expiresAt < :now order by t.id")
+    List<Long> findExpiredIds(@Param("now") Instant now, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from TokenStore t where t.id in :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
 }
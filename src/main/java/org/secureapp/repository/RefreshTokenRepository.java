@@ -0,0 +1,42 @@
+package org.secureapp.repository;
+
+import org.secureapp.model.RefreshToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface RefreshTokenRepository extends CrudRepository<RefreshToken, Long> {
+
+    RefreshToken findByTokenDigest(byte[] tokenDigest);
+
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.consumedAt = :now where t.tokenDigest = :tokenDigest and t.consumedAt is null")
+    int markConsumed(@Param("tokenDigest") byte[] tokenDigest, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.familyId = :familyId")
+    int deleteByFamilyId(@Param("familyId") byte[] familyId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.username = :username")
+    int deleteByUsername(@Param("username") String username);
+
+    @Query("select t.id from RefreshToken t where t.expiresAt < :now order by t.id")
+    List<Long> findExpiredIds(@Param("now") Instant now, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.id in :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
+}
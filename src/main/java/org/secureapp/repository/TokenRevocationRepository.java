@@ -0,0 +1,26 @@
+package org.secureapp.repository;
+
+import org.secureapp.model.TokenRevocation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface TokenRevocationRepository extends CrudRepository<TokenRevocation, String> {
+
+    @Query("select t.username from TokenRevocation t where t.revokedBefore < :threshold order by t.revokedBefore")
+    List<String> findUsernamesOlderThan(@Param("threshold") Instant threshold, Pageable pageable);
+
+    /* Re-checks the threshold, a cutoff raised since it was selected is kept */
+    @Transactional
+    @Modifying
+    @Query("delete from TokenRevocation t where t.username in :usernames and t.revokedBefore < :threshold")
+    int deleteOlderThan(@Param("usernames") List<String> usernames, @Param("threshold") Instant threshold);
+}
@@ -0,0 +1,249 @@
+package org.secureapp.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.secureapp.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Set based JDBC access for bulk user operations. Hibernate can't batch inserts of
+ * IDENTITY generated entities, so bulk inserts go through JDBC batches instead; on
+ * MySQL they are only rewritten into multi-row inserts with
+ * {@code rewriteBatchedStatements=true} on the connection URL.
+ */
+@Repository
+public class UserBatchRepository {
+
+    private static final String INSERT_USER =
+            "INSERT INTO user (username, password, first_name, last_name, email, " +
+                    "username_normalized, email_normalized, first_name_normalized, last_name_normalized, version) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_USER_ROLE =
+            "INSERT INTO user_roles (user_id, role_id) " +
+                    "SELECT u.user_id, r.role_id FROM user u, roles r WHERE u.username_normalized = ? AND r.role_id = ?";
+
+    private static final String SELECT_EXISTING_USERNAMES =
+            "SELECT username_normalized FROM user WHERE username_normalized IN (:values)";
+
+    private static final String SELECT_EXISTING_EMAILS =
+            "SELECT email_normalized FROM user WHERE email_normalized IN (:values)";
+
+    private static final String SELECT_USER_KEYS =
+            "SELECT user_id, username_normalized FROM user WHERE username_normalized IN (:usernames)";
+
+    private static final String SELECT_USER_KEYS_BY_PREFIX =
+            "SELECT user_id, username_normalized FROM user " +
+                    "WHERE username_normalized LIKE :pattern ESCAPE '!' AND username_normalized > :after " +
+                    "ORDER BY username_normalized LIMIT :limit";
+
+    private static final String DELETE_USER_ROLES = "DELETE FROM user_roles WHERE user_id IN (:ids)";
+
+    private static final String DELETE_USERS = "DELETE FROM user WHERE user_id IN (:ids)";
+
+    private static final String DELETE_REFRESH_TOKENS = "DELETE FROM refresh_token WHERE username IN (:usernames)";
+
+    private static final String GRANT_ROLE =
+            "INSERT INTO user_roles (user_id, role_id) " +
+                    "SELECT u.user_id, r.role_id FROM user u, roles r " +
+                    "WHERE u.user_id IN (:ids) AND r.role_id = :roleId " +
+                    "AND NOT EXISTS (SELECT 1 FROM user_roles ur WHERE ur.user_id = u.user_id AND ur.role_id = r.role_id)";
+
+    private static final String REVOKE_ROLE = "DELETE FROM user_roles WHERE role_id = :roleId AND user_id IN (:ids)";
+
+    private static final String SELECT_USER_IDS_WITH_ROLE =
+            "SELECT user_id FROM user_roles WHERE role_id = :roleId AND user_id IN (:ids)";
+
+    private static final String SELECT_TOKEN_REVOCATIONS_AFTER =
+            "SELECT username, revoked_before FROM token_revocation WHERE revoked_before > :after";
+
+    private static final String DELETE_TOKEN_REVOCATIONS = "DELETE FROM token_revocation WHERE username IN (:usernames)";
+
+    private static final String INSERT_TOKEN_REVOCATION =
+            "INSERT INTO token_revocation (username, revoked_before) VALUES (?, ?)";
+
+    private static final String RAISE_TOKEN_REVOCATIONS =
+            "UPDATE token_revocation SET revoked_before = :revokedBefore " +
+                    "WHERE username IN (:usernames) AND revoked_before < :revokedBefore";
+
+    private static final RowMapper<UserKey> USER_KEY_MAPPER = (resultSet, rowNum) ->
+            new UserKey(resultSet.getLong("user_id"), resultSet.getString("username_normalized"));
+
+    @Autowired
+    DataSource dataSource;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    public Set<String> findExistingNormalizedUsernames(Collection<String> normalizedUsernames) {
+        return findExisting(SELECT_EXISTING_USERNAMES, normalizedUsernames);
+    }
+
+    public Set<String> findExistingNormalizedEmails(Collection<String> normalizedEmails) {
+        return findExisting(SELECT_EXISTING_EMAILS, normalizedEmails);
+    }
+
+    /**
+     * Inserts the users and links each of them to the given role, two JDBC batches in
+     * total. The normalized columns must already be set.
+     */
+    public void insertUsers(List<User> users, int roleId) {
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_USER, users, users.size(), (ps, user) -> {
+            ps.setString(1, user.getUsername());
+            ps.setString(2, user.getPassword());
+            ps.setString(3, user.getFirstname());
+            ps.setString(4, user.getLastname());
+            ps.setString(5, user.getEmail());
+            ps.setString(6, user.getNormalizedUsername());
+            ps.setString(7, user.getNormalizedEmail());
+            ps.setString(8, user.getNormalizedFirstname());
+            ps.setString(9, user.getNormalizedLastname());
+        });
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_USER_ROLE, users, users.size(), (ps, user) -> {
+            ps.setString(1, user.getNormalizedUsername());
+            ps.setInt(2, roleId);
+        });
+    }
+
+    public List<UserKey> findUserKeys(Collection<String> normalizedUsernames) {
+        if (normalizedUsernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return jdbcTemplate.query(SELECT_USER_KEYS,
+                Collections.singletonMap("usernames", normalizedUsernames), USER_KEY_MAPPER);
+    }
+
+    /**
+     * One keyset page, ordered by normalized username, of the users whose normalized
+     * username starts with the prefix. Both the prefix and the page start are bounds of
+     * a range scan of the unique username index; pass "" for the first page.
+     */
+    public List<UserKey> findUserKeysByPrefix(String normalizedPrefix, String afterUsername, int limit) {
+        return jdbcTemplate.query(SELECT_USER_KEYS_BY_PREFIX, new MapSqlParameterSource()
+                .addValue("pattern", prefixPattern(normalizedPrefix))
+                .addValue("after", afterUsername)
+                .addValue("limit", limit), USER_KEY_MAPPER);
+    }
+
+    /**
+     * Deletes the users with their role links and refresh tokens, returns the number
+     * of users deleted.
+     */
+    public int deleteUsers(List<UserKey> users) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("ids", ids(users))
+                .addValue("usernames", usernames(users));
+
+        jdbcTemplate.update(DELETE_USER_ROLES, parameters);
+        jdbcTemplate.update(DELETE_REFRESH_TOKENS, parameters);
+        return jdbcTemplate.update(DELETE_USERS, parameters);
+    }
+
+    public int grantRole(List<UserKey> users, int roleId) {
+        return jdbcTemplate.update(GRANT_ROLE, new MapSqlParameterSource()
+                .addValue("ids", ids(users))
+                .addValue("roleId", roleId));
+    }
+
+    public int revokeRole(List<UserKey> users, int roleId) {
+        return jdbcTemplate.update(REVOKE_ROLE, new MapSqlParameterSource()
+                .addValue("ids", ids(users))
+                .addValue("roleId", roleId));
+    }
+
+    public Set<Long> findIdsWithRole(List<UserKey> users, int roleId) {
+        return new HashSet<>(jdbcTemplate.queryForList(SELECT_USER_IDS_WITH_ROLE, new MapSqlParameterSource()
+                .addValue("ids", ids(users))
+                .addValue("roleId", roleId), Long.class));
+    }
+
+    /**
+     * Streams the token cutoffs set after the given instant, served by the
+     * revoked_before index.
+     */
+    public void forEachTokenRevocationAfter(Instant after, BiConsumer<String, Instant> consumer) {
+        jdbcTemplate.query(SELECT_TOKEN_REVOCATIONS_AFTER, Collections.singletonMap("after", Timestamp.from(after)),
+                (RowCallbackHandler) resultSet -> consumer.accept(
+                        resultSet.getString("username"), resultSet.getTimestamp("revoked_before").toInstant()));
+    }
+
+    /**
+     * Sets the token cutoff of the users, replacing any earlier one.
+     */
+    public void revokeTokensIssuedBefore(List<UserKey> users, Instant cutoff) {
+        List<String> usernames = usernames(users);
+        Timestamp revokedBefore = Timestamp.from(cutoff);
+
+        jdbcTemplate.update(DELETE_TOKEN_REVOCATIONS, Collections.singletonMap("usernames", usernames));
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_TOKEN_REVOCATION, usernames, usernames.size(), (ps, username) -> {
+            ps.setString(1, username);
+            ps.setTimestamp(2, revokedBefore);
+        });
+    }
+
+    /**
+     * Moves the token cutoff of the users forward to the given instant, never back.
+     */
+    public void raiseTokensIssuedBefore(List<UserKey> users, Instant cutoff) {
+        jdbcTemplate.update(RAISE_TOKEN_REVOCATIONS, new MapSqlParameterSource()
+                .addValue("usernames", usernames(users))
+                .addValue("revokedBefore", Timestamp.from(cutoff)));
+    }
+
+    /**
+     * LIKE pattern matching values that start with the prefix, to be used with
+     * {@code ESCAPE '!'}.
+     */
+    static String prefixPattern(String prefix) {
+        return prefix
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_") + "%";
+    }
+
+    private static List<Long> ids(List<UserKey> users) {
+        return users.stream().map(UserKey::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> usernames(List<UserKey> users) {
+        return users.stream().map(UserKey::getNormalizedUsername).collect(Collectors.toList());
+    }
+
+    private Set<String> findExisting(String sql, Collection<String> values) {
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql,
+                Collections.singletonMap("values", values), String.class));
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static final class UserKey {
+        private final long id;
+        private final String normalizedUsername;
+    }
+}
@@ -1,19 +1,36 @@
 package org.secureapp.repository;
 
 import org.secureapp.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Repository
-public interface UserRepository extends CrudRepository<User, Long> {
+public interface UserRepository extends CrudRepository<User, Long>, UserSearchRepository {
 
-    User findByUsernameIgnoreCase(String username);
+    @EntityGraph(attributePaths = "roles")
+    User findByNormalizedUsername(String normalizedUsername);
 
-    User findByUsernameNotIgnoreCaseAndEmailIgnoreCase(String username, String email);
+    User findByNormalizedUsernameNotAndNormalizedEmail(String normalizedUsername, String normalizedEmail);
 
-    List<User> findByUsernameIgnoreCaseOrEmailIgnoreCase(String username, String email);
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    List<User> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+    @Query("select distinct u from User u left join fetch u.roles order by u.id")
+    List<User> findAllWithRoles();
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password where u.normalizedUsername = :normalizedUsername")
+    int updatePassword(@Param("normalizedUsername") String normalizedUsername, @Param("password") String password);
 
 
 }
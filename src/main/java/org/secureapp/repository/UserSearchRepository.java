@@ -0,0 +1,17 @@
+package org.secureapp.repository;
+
+import org.secureapp.dto.UserSearchField;
+import org.secureapp.model.User;
+
+import java.util.List;
+
+public interface UserSearchRepository {
+
+    /**
+     * One keyset page, ordered by ({@code field}, id), of the users whose {@code field}
+     * starts with the lower-cased prefix, optionally restricted to holders of a role.
+     * The page starts after ({@code afterValue}, {@code afterId}), or at the beginning
+     * when {@code afterValue} is null.
+     */
+    List<User> search(String normalizedPrefix, UserSearchField field, String role, String afterValue, long afterId, int limit);
+}
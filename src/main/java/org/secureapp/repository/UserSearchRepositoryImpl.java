@@ -0,0 +1,61 @@
+package org.secureapp.repository;
+
+import org.secureapp.dto.UserSearchField;
+import org.secureapp.model.Role;
+import org.secureapp.model.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria query behind {@link UserSearchRepository}. The field is matched with a
+ * {@code LIKE 'prefix%'} on its normalized column and the page is keyed and ordered on
+ * (column, id), so both the prefix and the cursor are bounds of one range scan of the
+ * column's (column, user_id) index and deep pages cost the same as the first one.
+ */
+public class UserSearchRepositoryImpl implements UserSearchRepository {
+
+    private static final char LIKE_ESCAPE = '!';
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Override
+    public List<User> search(String normalizedPrefix, UserSearchField field, String role, String afterValue, long afterId, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> query = builder.createQuery(User.class);
+        Root<User> user = query.from(User.class);
+        Path<String> column = user.get(field.getAttribute());
+        Path<Long> id = user.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.like(column, UserBatchRepository.prefixPattern(normalizedPrefix), LIKE_ESCAPE));
+        if (afterValue != null) {
+            // (column, id) > (afterValue, afterId), spelled out for the JPA criteria API
+            predicates.add(builder.or(
+                    builder.greaterThan(column, afterValue),
+                    builder.and(builder.equal(column, afterValue), builder.greaterThan(id, afterId))));
+        }
+        if (role != null) {
+            // A user holds a role at most once, so the join can't duplicate rows
+            Join<User, Role> roles = user.join("roles");
+            predicates.add(builder.equal(roles.get("name"), role));
+        }
+
+        query.select(user)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(column), builder.asc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,108 @@
+package org.secureapp.repository;
+
+import org.secureapp.dto.UserExportRow;
+import org.secureapp.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads the whole user table in keyset pages of user.stream.page-size users, ordered
+ * by user_id. Each page is read completely before it is handed to the consumer, so the
+ * connection goes back to the pool between pages and a slow consumer (a client
+ * downloading at its own pace) never holds one; memory is bounded by the page size.
+ */
+@Repository
+public class UserStreamRepository {
+
+    private static final String SELECT_USERS_PAGE =
+            "SELECT user_id, username, first_name, last_name, email FROM user " +
+                    "WHERE user_id > ? ORDER BY user_id LIMIT ?";
+
+    private static final String SELECT_USERS_WITH_ROLES_PAGE =
+            "SELECT u.user_id, u.username, u.first_name, u.last_name, u.email, r.name AS role_name FROM " +
+                    "(SELECT user_id, username, first_name, last_name, email FROM user " +
+                    "WHERE user_id > ? ORDER BY user_id LIMIT ?) u " +
+                    "LEFT JOIN user_roles ur ON ur.user_id = u.user_id " +
+                    "LEFT JOIN roles r ON r.role_id = ur.role_id " +
+                    "ORDER BY u.user_id";
+
+    private static final RowMapper<User> USER_MAPPER = (resultSet, rowNum) -> User.builder()
+            .id(resultSet.getLong("user_id"))
+            .username(resultSet.getString("username"))
+            .firstname(resultSet.getString("first_name"))
+            .lastname(resultSet.getString("last_name"))
+            .email(resultSet.getString("email"))
+            .build();
+
+    @Value("${user.stream.page-size:1000}")
+    private int pageSize;
+
+    @Autowired
+    DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void forEachUser(Consumer<User> consumer) {
+        long afterId = 0;
+        while (true) {
+            List<User> page = jdbcTemplate.query(SELECT_USERS_PAGE, USER_MAPPER, afterId, pageSize);
+            page.forEach(consumer);
+            if (page.size() < pageSize) {
+                return;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    /**
+     * Like {@link #forEachUser(Consumer)}, with the role names of each user. A page
+     * is a page of users, joined with their roles.
+     */
+    public void forEachUserWithRoles(Consumer<UserExportRow> consumer) {
+        long afterId = 0;
+        while (true) {
+            Map<Long, UserExportRow> page = new LinkedHashMap<>();
+            jdbcTemplate.query(SELECT_USERS_WITH_ROLES_PAGE, (RowCallbackHandler) resultSet -> {
+                long userId = resultSet.getLong("user_id");
+                UserExportRow row = page.get(userId);
+                if (row == null) {
+                    row = new UserExportRow();
+                    row.setUsername(resultSet.getString("username"));
+                    row.setFirstname(resultSet.getString("first_name"));
+                    row.setLastname(resultSet.getString("last_name"));
+                    row.setEmail(resultSet.getString("email"));
+                    page.put(userId, row);
+                }
+
+                String roleName = resultSet.getString("role_name");
+                if (roleName != null) {
+                    row.getRoles().add(roleName);
+                }
+            }, afterId, pageSize);
+
+            for (Map.Entry<Long, UserExportRow> entry : page.entrySet()) {
+                consumer.accept(entry.getValue());
+                afterId = entry.getKey();
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.secureapp.service;
+
+import org.secureapp.model.AuthToken;
+
+public interface RefreshTokenService {
+    String issue(String username);
+
+    AuthToken refresh(String refreshToken);
+
+    void revoke(String refreshToken, String username);
+
+    void revokeAll(String username);
+}
@@ -1,7 +1,23 @@
 package org.secureapp.service;
 
 import org.secureapp.model.Role;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface RoleService {
     Role findByName(String name);
+
+    Role findById(Integer id);
+
+    List<Role> findAll();
+
+    void refresh();
+
+    GrantedAuthority getAuthority(String name);
+
+    long getRoleMask(Collection<? extends GrantedAuthority> authorities);
+
+    List<GrantedAuthority> getAuthorities(long roleMask);
 }
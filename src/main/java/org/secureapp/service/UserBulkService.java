@@ -0,0 +1,13 @@
+package org.secureapp.service;
+
+import org.secureapp.dto.BulkOperationReport;
+import org.secureapp.dto.BulkRoleAssignment;
+import org.secureapp.dto.BulkUserSelection;
+
+public interface UserBulkService {
+    BulkOperationReport deleteUsers(BulkUserSelection selection);
+
+    BulkOperationReport grantRole(BulkRoleAssignment assignment);
+
+    BulkOperationReport revokeRole(BulkRoleAssignment assignment);
+}
@@ -0,0 +1,12 @@
+package org.secureapp.service;
+
+import org.secureapp.dto.BulkImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface UserImportService {
+    BulkImportReport importCsv(InputStream inputStream) throws IOException;
+
+    BulkImportReport importNdjson(InputStream inputStream) throws IOException;
+}
@@ -1,15 +1,18 @@
 package org.secureapp.service;
 
 import org.secureapp.dto.UserDto;
+import org.secureapp.dto.UserPage;
+import org.secureapp.dto.UserSearchPage;
 import org.secureapp.dto.UserUpdateDto;
 import org.secureapp.model.User;
 
+import java.io.OutputStream;
 import java.util.List;
 
 public interface UserService {
     User save(UserDto user);
 
-    User update(UserUpdateDto user);
+    User update(UserUpdateDto user, String ifMatch);
 
     User find(String userName);
 
@@ -17,5 +20,13 @@ public interface UserService {
 
     List<User> findAllUsers();
 
+    UserPage findUsers(Long cursor, Integer size, String sort);
+
+    UserSearchPage searchUsers(String query, String field, String role, String cursor, Integer size);
+
+    void streamAllUsers(OutputStream outputStream);
+
+    void exportUsers(OutputStream outputStream, boolean csv);
+
 
 }
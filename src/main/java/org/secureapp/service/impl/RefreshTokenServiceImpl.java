@@ -0,0 +1,124 @@
+package org.secureapp.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.config.JwtTokenProvider;
+import org.secureapp.config.UserDetailsServiceImpl;
+import org.secureapp.exception.InvalidTokenException;
+import org.secureapp.model.AuthToken;
+import org.secureapp.model.RefreshToken;
+import org.secureapp.repository.RefreshTokenRepository;
+import org.secureapp.service.RefreshTokenService;
+import org.secureapp.util.TokenDigest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Long lived, single use refresh tokens. Only the SHA-256 digest is stored; every
+ * refresh marks the presented token consumed and issues a new one of the same family
+ * (the tokens rotated from one login). A consumed token presented again means it was
+ * stolen or replayed, so the whole family is revoked, including the token of whoever
+ * rotated it last.
+ */
+@Service
+@Slf4j
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    private static final String INVALID_REFRESH_TOKEN = "Invalid refresh token";
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${jwt.refresh-token.validity:1209600}")
+    private long refreshTokenValidity;
+
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    JwtTokenProvider jwtTokenUtil;
+
+    @Override
+    public String issue(String username) {
+        byte[] familyId = new byte[16];
+        secureRandom.nextBytes(familyId);
+        return issue(username, familyId);
+    }
+
+    private String issue(String username, byte[] familyId) {
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken entity = new RefreshToken();
+        entity.setTokenDigest(TokenDigest.sha256(refreshToken));
+        entity.setFamilyId(familyId);
+        entity.setUsername(normalize(username));
+        entity.setExpiresAt(Instant.now().plusSeconds(refreshTokenValidity));
+        refreshTokenRepository.save(entity);
+
+        return refreshToken;
+    }
+
+    @Override
+    public AuthToken refresh(String refreshToken) {
+        log.info("In refresh");
+        byte[] tokenDigest = TokenDigest.sha256(refreshToken);
+        RefreshToken entity = refreshTokenRepository.findByTokenDigest(tokenDigest);
+
+        if (entity == null) {
+            log.warn(INVALID_REFRESH_TOKEN);
+            throw new InvalidTokenException(INVALID_REFRESH_TOKEN);
+        }
+        // The conditional update makes the rotation atomic: of two concurrent refreshes
+        // with the same token only one marks it consumed, the other is a reuse
+        if (entity.getConsumedAt() != null || refreshTokenRepository.markConsumed(tokenDigest, Instant.now()) == 0) {
+            log.warn("Reuse of a consumed refresh token of {}, revoking its family", entity.getUsername());
+            refreshTokenRepository.deleteByFamilyId(entity.getFamilyId());
+            throw new InvalidTokenException(INVALID_REFRESH_TOKEN);
+        }
+        if (entity.getExpiresAt().isBefore(Instant.now())) {
+            log.warn("Refresh token expired");
+            throw new InvalidTokenException(INVALID_REFRESH_TOKEN);
+        }
+
+        UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername(entity.getUsername());
+        } catch (UsernameNotFoundException e) {
+            log.warn("Refresh token of a deleted user");
+            throw new InvalidTokenException(INVALID_REFRESH_TOKEN);
+        }
+
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        return new AuthToken(jwtTokenUtil.generateToken(authentication),
+                issue(userDetails.getUsername(), entity.getFamilyId()));
+    }
+
+    @Override
+    public void revoke(String refreshToken, String username) {
+        byte[] tokenDigest = TokenDigest.sha256(refreshToken);
+        RefreshToken entity = refreshTokenRepository.findByTokenDigest(tokenDigest);
+
+        if (entity != null && entity.getUsername().equals(normalize(username))) {
+            refreshTokenRepository.deleteByFamilyId(entity.getFamilyId());
+        }
+    }
+
+    @Override
+    public void revokeAll(String username) {
+        refreshTokenRepository.deleteByUsername(normalize(username));
+    }
+}
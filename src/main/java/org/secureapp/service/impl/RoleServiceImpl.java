@@ -1,19 +1,142 @@
 package org.secureapp.service.impl;
 
+import lombok.extern.slf4j.Slf4j;
 import org.secureapp.model.Role;
 import org.secureapp.repository.RoleRepository;
 import org.secureapp.service.RoleService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves roles from an immutable in-memory registry loaded at startup. The roles
+ * table only changes through migrations or by hand, so the registry is reloaded
+ * on a schedule or through {@link #refresh()} rather than queried per request.
+ */
 @Service
+@Slf4j
 public class RoleServiceImpl implements RoleService {
 
     @Autowired
     RoleRepository roleRepository;
 
+    private volatile Registry registry = new Registry(Collections.emptyList());
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
     @Override
     public Role findByName(String name) {
-        return roleRepository.findByName(name);
+        // Names come from requests too, so misses are not looked up in the database.
+        // Roles inserted after the last refresh are found once the registry is reloaded.
+        return registry.byName.get(name);
+    }
+
+    @Override
+    public Role findById(Integer id) {
+        return registry.byId.get(id);
+    }
+
+    @Override
+    public List<Role> findAll() {
+        return registry.roles;
+    }
+
+    /**
+     * Returns the shared authority instance of a role, so authorities built for each
+     * request don't allocate new objects. Unknown names get a new instance.
+     */
+    @Override
+    public GrantedAuthority getAuthority(String name) {
+        GrantedAuthority authority = registry.authorities.get(name);
+        return authority != null ? authority : new SimpleGrantedAuthority(name);
+    }
+
+    /**
+     * Encodes the authorities as a bitmask with one bit per role id, or returns -1
+     * if one of them is not a known role with an id below 64.
+     */
+    @Override
+    public long getRoleMask(Collection<? extends GrantedAuthority> authorities) {
+        Registry current = registry;
+        long roleMask = 0;
+
+        for (GrantedAuthority authority : authorities) {
+            Role role = current.byName.get(authority.getAuthority());
+            if (role == null || role.getId() < 0 || role.getId() >= Long.SIZE) {
+                return -1;
+            }
+            roleMask |= 1L << role.getId();
+        }
+
+        return roleMask;
+    }
+
+    /**
+     * Decodes a mask from {@link #getRoleMask(Collection)}. The decoded list is
+     * memoized per mask, bits of roles that no longer exist are ignored.
+     */
+    @Override
+    public List<GrantedAuthority> getAuthorities(long roleMask) {
+        Registry current = registry;
+        return current.authoritiesByMask.computeIfAbsent(roleMask, mask -> {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (int id = 0; id < Long.SIZE; id++) {
+                Role role = (mask & (1L << id)) != 0 ? current.byId.get(id) : null;
+                if (role != null) {
+                    authorities.add(current.authorities.get(role.getName()));
+                }
+            }
+            return Collections.unmodifiableList(authorities);
+        });
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${role.registry.refresh.interval:3600000}",
+            initialDelayString = "${role.registry.refresh.interval:3600000}")
+    public void refresh() {
+        List<Role> roles = new ArrayList<>();
+        roleRepository.findAll().forEach(roles::add);
+
+        registry = new Registry(roles);
+        log.info("Loaded {} roles into the role registry", roles.size());
+    }
+
+    private static final class Registry {
+        private final List<Role> roles;
+        private final Map<String, Role> byName;
+        private final Map<Integer, Role> byId;
+        private final Map<String, GrantedAuthority> authorities;
+        private final Map<Long, List<GrantedAuthority>> authoritiesByMask = new ConcurrentHashMap<>();
+
+        private Registry(List<Role> roles) {
+            Map<String, Role> byName = new HashMap<>();
+            Map<Integer, Role> byId = new HashMap<>();
+            Map<String, GrantedAuthority> authorities = new HashMap<>();
+
+            for (Role role : roles) {
+                byName.put(role.getName(), role);
+                byId.put(role.getId(), role);
+                authorities.put(role.getName(), new SimpleGrantedAuthority(role.getName()));
+            }
+
+            this.roles = Collections.unmodifiableList(roles);
+            this.byName = Collections.unmodifiableMap(byName);
+            this.byId = Collections.unmodifiableMap(byId);
+            this.authorities = Collections.unmodifiableMap(authorities);
+        }
     }
 }
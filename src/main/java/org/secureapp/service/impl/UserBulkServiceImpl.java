@@ -0,0 +1,208 @@
+package org.secureapp.service.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.cache.LoginVerificationCache;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.cache.UserDetailsCache;
+import org.secureapp.dto.BulkOperationReport;
+import org.secureapp.dto.BulkRoleAssignment;
+import org.secureapp.dto.BulkUserSelection;
+import org.secureapp.exception.RecordNotFoundException;
+import org.secureapp.model.Role;
+import org.secureapp.repository.UserBatchRepository;
+import org.secureapp.repository.UserBatchRepository.UserKey;
+import org.secureapp.service.RoleService;
+import org.secureapp.service.UserBulkService;
+import org.secureapp.util.LoggedInUserHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Bulk admin operations as set based SQL, one transaction per chunk of users. Tokens
+ * of affected users can't be black listed one by one since they are unknown, so each
+ * chunk also records a token cutoff for the users it actually changed (see
+ * {@link TokenRevocationCache}); they have to log in or refresh to get a token
+ * reflecting the change. Users that already had the requested state keep their tokens.
+ * Deleting users or stripping a role never applies to the calling admin, so an admin
+ * can't lock themselves out with a broad selection.
+ */
+@Service
+@Slf4j
+public class UserBulkServiceImpl implements UserBulkService {
+
+    @Value("${user.bulk.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Autowired
+    RoleService roleService;
+
+    @Autowired
+    UserDetailsCache userDetailsCache;
+
+    @Autowired
+    LoginVerificationCache loginVerificationCache;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    LoggedInUserHelper loggedInUserHelper;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public BulkOperationReport deleteUsers(BulkUserSelection selection) {
+        log.info("In deleteUsers");
+        return forEachChunk(selection, callerUsername(), users ->
+                new ChunkResult(users, userBatchRepository.deleteUsers(users)));
+    }
+
+    @Override
+    public BulkOperationReport grantRole(BulkRoleAssignment assignment) {
+        log.info("In grantRole {}", assignment.getRole());
+        int roleId = findRole(assignment.getRole()).getId();
+        return forEachChunk(assignment, null, users -> {
+            Set<Long> holders = userBatchRepository.findIdsWithRole(users, roleId);
+            List<UserKey> changed = users.stream()
+                    .filter(user -> !holders.contains(user.getId()))
+                    .collect(Collectors.toList());
+            return new ChunkResult(changed, changed.isEmpty() ? 0 : userBatchRepository.grantRole(changed, roleId));
+        });
+    }
+
+    @Override
+    public BulkOperationReport revokeRole(BulkRoleAssignment assignment) {
+        log.info("In revokeRole {}", assignment.getRole());
+        int roleId = findRole(assignment.getRole()).getId();
+        return forEachChunk(assignment, callerUsername(), users -> {
+            Set<Long> holders = userBatchRepository.findIdsWithRole(users, roleId);
+            List<UserKey> changed = users.stream()
+                    .filter(user -> holders.contains(user.getId()))
+                    .collect(Collectors.toList());
+            return new ChunkResult(changed, changed.isEmpty() ? 0 : userBatchRepository.revokeRole(changed, roleId));
+        });
+    }
+
+    private Role findRole(String name) {
+        Role role = roleService.findByName(name);
+        if (role == null) {
+            log.warn("Role {} not found", name);
+            throw new RecordNotFoundException("Role not found");
+        }
+        return role;
+    }
+
+    private String callerUsername() {
+        return normalize(loggedInUserHelper.getCurrentLoggedInUserName());
+    }
+
+    /*
+     * Runs the operation on each chunk of selected users, leaving out excludedUsername
+     * when it is set.
+     */
+    private BulkOperationReport forEachChunk(BulkUserSelection selection, String excludedUsername,
+                                             Function<List<UserKey>, ChunkResult> operation) {
+        BulkOperationReport report = new BulkOperationReport();
+
+        if (selection.getUsernames() != null && !selection.getUsernames().isEmpty()) {
+            List<String> usernames = new ArrayList<>(selection.getUsernames().stream()
+                    .map(username -> normalize(username))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+
+            for (int from = 0; from < usernames.size(); from += batchSize) {
+                List<String> chunk = usernames.subList(from, Math.min(from + batchSize, usernames.size()));
+                apply(report, userBatchRepository.findUserKeys(chunk), excludedUsername, operation);
+            }
+        } else {
+            String prefix = normalize(selection.getUsernamePrefix());
+            String afterUsername = "";
+            while (true) {
+                List<UserKey> chunk = userBatchRepository.findUserKeysByPrefix(prefix, afterUsername, batchSize);
+                apply(report, chunk, excludedUsername, operation);
+                if (chunk.size() < batchSize) {
+                    break;
+                }
+                afterUsername = chunk.get(chunk.size() - 1).getNormalizedUsername();
+            }
+        }
+
+        log.info("Bulk operation matched {} users, {} rows affected", report.getMatchedUsers(), report.getAffectedRows());
+        return report;
+    }
+
+    private void apply(BulkOperationReport report, List<UserKey> selected, String excludedUsername,
+                       Function<List<UserKey>, ChunkResult> operation) {
+        List<UserKey> users = excludedUsername == null ? selected : selected.stream()
+                .filter(user -> !excludedUsername.equals(user.getNormalizedUsername()))
+                .collect(Collectors.toList());
+        if (users.isEmpty()) {
+            return;
+        }
+
+        ChunkResult result = transactionTemplate.execute(status -> {
+            ChunkResult chunkResult = operation.apply(users);
+            if (!chunkResult.getChanged().isEmpty()) {
+                userBatchRepository.revokeTokensIssuedBefore(chunkResult.getChanged(), Instant.now());
+            }
+            return chunkResult;
+        });
+
+        List<UserKey> changed = result.getChanged();
+        if (!changed.isEmpty()) {
+            /*
+             * A login that read the old state before the commit can still sign its token
+             * after the cutoff written above. Move the cutoff past the commit, one second
+             * more since iat only has second precision; users logging in within that
+             * second have to log in again.
+             */
+            Instant cutoff = Instant.now().plusSeconds(1);
+            userBatchRepository.raiseTokensIssuedBefore(changed, cutoff);
+
+            List<String> usernames = changed.stream().map(UserKey::getNormalizedUsername).collect(Collectors.toList());
+            tokenRevocationCache.revokeTokensIssuedBefore(usernames, cutoff);
+            for (String username : usernames) {
+                userDetailsCache.invalidate(username);
+                loginVerificationCache.invalidate(username);
+            }
+        }
+
+        report.add(users.size(), result.getAffectedRows());
+    }
+
+    @AllArgsConstructor
+    @Getter
+    private static final class ChunkResult {
+        /* Users whose state the chunk changed, their tokens get cut off */
+        private final List<UserKey> changed;
+
+        /* Rows the statements actually changed, as reported by the database */
+        private final int affectedRows;
+    }
+}
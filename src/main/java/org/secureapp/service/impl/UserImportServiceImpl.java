@@ -0,0 +1,401 @@
+package org.secureapp.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.secureapp.config.BoundedPasswordEncoder;
+import org.secureapp.dto.BulkImportReport;
+import org.secureapp.dto.BulkImportRowResult;
+import org.secureapp.dto.UserDto;
+import org.secureapp.model.User;
+import org.secureapp.repository.UserBatchRepository;
+import org.secureapp.service.RoleService;
+import org.secureapp.service.UserImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.secureapp.util.ApplicationConstants.ROLE_USER;
+import static org.secureapp.util.TextNormalizer.normalize;
+
+/**
+ * Imports users from a streamed CSV or NDJSON body. Rows are validated as they are
+ * read and imported in chunks: one query per chunk finds names/emails that are
+ * already taken, passwords are hashed in parallel on a dedicated pool, and the
+ * chunk is inserted with JDBC batches in a single transaction. The pool is kept below
+ * the core count (half the CPUs by default) so an import can't starve the logins
+ * hashing on {@link org.secureapp.config.PasswordHashingExecutor}; once its bounded
+ * queue is full the importing thread hashes itself, which slows the import down.
+ */
+@Service
+@Slf4j
+public class UserImportServiceImpl implements UserImportService {
+
+    private static final String USERNAME_EXISTS = "User with the given username already exists";
+
+    private static final String EMAIL_EXISTS = "User with the given email already exists";
+
+    @Value("${user.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${user.import.hashing-threads:0}")
+    private int hashingThreads;
+
+    @Value("${user.import.hashing-queue-capacity:500}")
+    private int hashingQueueCapacity;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Autowired
+    RoleService roleService;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    Validator validator;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private ThreadPoolExecutor hashingExecutor;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        int threads = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger count = new AtomicInteger();
+        hashingExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hashingQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "user-import-hashing-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+
+    /**
+     * The first line is a header naming the columns (username, password, firstname,
+     * lastname, email) in any order. Fields may be quoted, but not span lines.
+     */
+    @Override
+    public BulkImportReport importCsv(InputStream inputStream) throws IOException {
+        log.info("In importCsv");
+        BufferedReader reader = newReader(inputStream);
+        Import userImport = new Import();
+
+        String header = reader.readLine();
+        if (header == null) {
+            return userImport.finish();
+        }
+        List<String> columns = parseCsvLine(header).stream()
+                .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toList());
+
+        String line;
+        long lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            List<String> fields = parseCsvLine(line);
+            if (fields.size() != columns.size()) {
+                userImport.report.failed(lineNumber, null, "Expected " + columns.size() + " columns");
+                continue;
+            }
+
+            UserDto userDto = new UserDto();
+            for (int i = 0; i < columns.size(); i++) {
+                String value = fields.get(i).isEmpty() ? null : fields.get(i);
+                switch (columns.get(i)) {
+                    case "username":
+                        userDto.setUsername(value);
+                        break;
+                    case "password":
+                        userDto.setPassword(value);
+                        break;
+                    case "firstname":
+                        userDto.setFirstname(value);
+                        break;
+                    case "lastname":
+                        userDto.setLastname(value);
+                        break;
+                    case "email":
+                        userDto.setEmail(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            userImport.add(lineNumber, userDto);
+        }
+
+        return userImport.finish();
+    }
+
+    /**
+     * One JSON object per line, with the fields of a /user/register request.
+     */
+    @Override
+    public BulkImportReport importNdjson(InputStream inputStream) throws IOException {
+        log.info("In importNdjson");
+        BufferedReader reader = newReader(inputStream);
+        Import userImport = new Import();
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            try {
+                userImport.add(lineNumber, objectMapper.readValue(line, UserDto.class));
+            } catch (JsonProcessingException e) {
+                userImport.report.failed(lineNumber, null, "Malformed JSON");
+            }
+        }
+
+        return userImport.finish();
+    }
+
+    private BufferedReader newReader(InputStream inputStream) {
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    /**
+     * State of one import: the report, the rows waiting for the next chunk and the
+     * names/emails already seen in the file.
+     */
+    private final class Import {
+
+        private final BulkImportReport report = new BulkImportReport();
+
+        private final List<PendingRow> pending = new ArrayList<>();
+
+        private final Set<String> seenUsernames = new HashSet<>();
+
+        private final Set<String> seenEmails = new HashSet<>();
+
+        private final int roleId = roleService.findByName(ROLE_USER).getId();
+
+        /* Bulk hashing has its own pool, it must not queue behind or starve logins */
+        private final PasswordEncoder encoder = passwordEncoder instanceof BoundedPasswordEncoder
+                ? ((BoundedPasswordEncoder) passwordEncoder).getDelegate()
+                : passwordEncoder;
+
+        private void add(long line, UserDto userDto) {
+            Set<ConstraintViolation<UserDto>> violations = validator.validate(userDto);
+            if (!violations.isEmpty()) {
+                report.failed(line, userDto.getUsername(), violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                return;
+            }
+
+            String normalizedUsername = normalize(userDto.getUsername());
+            String normalizedEmail = normalize(userDto.getEmail());
+            if (seenUsernames.contains(normalizedUsername)) {
+                report.failed(line, userDto.getUsername(), "Duplicate username in file");
+                return;
+            }
+            if (normalizedEmail != null && seenEmails.contains(normalizedEmail)) {
+                report.failed(line, userDto.getUsername(), "Duplicate email in file");
+                return;
+            }
+            seenUsernames.add(normalizedUsername);
+            if (normalizedEmail != null) {
+                seenEmails.add(normalizedEmail);
+            }
+
+            pending.add(new PendingRow(line, userDto, normalizedUsername, normalizedEmail));
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private BulkImportReport finish() {
+            flush();
+            report.getRows().sort(Comparator.comparingLong(BulkImportRowResult::getLine));
+            log.info("Imported {} users, {} rows failed", report.getImported(), report.getFailed());
+            return report;
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            Set<String> existingUsernames = userBatchRepository.findExistingNormalizedUsernames(
+                    pending.stream().map(row -> row.normalizedUsername).collect(Collectors.toList()));
+            Set<String> existingEmails = userBatchRepository.findExistingNormalizedEmails(
+                    pending.stream().map(row -> row.normalizedEmail).filter(email -> email != null).collect(Collectors.toList()));
+
+            List<PendingRow> accepted = new ArrayList<>();
+            List<Future<String>> hashes = new ArrayList<>();
+            for (PendingRow row : pending) {
+                if (existingUsernames.contains(row.normalizedUsername)) {
+                    report.failed(row.line, row.userDto.getUsername(), USERNAME_EXISTS);
+                } else if (row.normalizedEmail != null && existingEmails.contains(row.normalizedEmail)) {
+                    report.failed(row.line, row.userDto.getUsername(), EMAIL_EXISTS);
+                } else {
+                    accepted.add(row);
+                    hashes.add(hashingExecutor.submit(() -> encoder.encode(row.userDto.getPassword())));
+                }
+            }
+            pending.clear();
+
+            List<PendingRow> hashed = new ArrayList<>(accepted.size());
+            List<User> users = new ArrayList<>(accepted.size());
+            for (int i = 0; i < accepted.size(); i++) {
+                PendingRow row = accepted.get(i);
+                String hash = getHash(row, hashes.get(i));
+                if (hash != null) {
+                    hashed.add(row);
+                    users.add(toUser(row, hash));
+                }
+            }
+            insert(hashed, users);
+        }
+
+        private void insert(List<PendingRow> rows, List<User> users) {
+            if (users.isEmpty()) {
+                return;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> userBatchRepository.insertUsers(users, roleId));
+                for (PendingRow row : rows) {
+                    report.imported(row.line, row.userDto.getUsername());
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Another request took one of the names since the check, insert the chunk row by row
+                log.warn("Bulk insert conflicted with existing users, retrying row by row");
+                for (int i = 0; i < users.size(); i++) {
+                    List<User> single = Collections.singletonList(users.get(i));
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> userBatchRepository.insertUsers(single, roleId));
+                        report.imported(rows.get(i).line, rows.get(i).userDto.getUsername());
+                    } catch (DataIntegrityViolationException conflict) {
+                        report.failed(rows.get(i).line, rows.get(i).userDto.getUsername(),
+                                "User with the given username/email already exists");
+                    }
+                }
+            }
+        }
+
+        /* The hash of the row's password, or null after reporting the row as failed */
+        private String getHash(PendingRow row, Future<String> hash) {
+            try {
+                return hash.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while hashing passwords", e);
+            } catch (ExecutionException e) {
+                log.warn("Password hashing failed for line {}", row.line, e.getCause());
+                report.failed(row.line, row.userDto.getUsername(), "Password hashing failed");
+                return null;
+            }
+        }
+
+        private User toUser(PendingRow row, String passwordHash) {
+            User user = new User();
+            user.setUsername(row.userDto.getUsername());
+            user.setPassword(passwordHash);
+            user.setFirstname(row.userDto.getFirstname());
+            user.setLastname(row.userDto.getLastname());
+            user.setEmail(row.userDto.getEmail());
+            user.setNormalizedUsername(row.normalizedUsername);
+            user.setNormalizedEmail(row.normalizedEmail);
+            user.setNormalizedFirstname(normalize(row.userDto.getFirstname()));
+            user.setNormalizedLastname(normalize(row.userDto.getLastname()));
+            return user;
+        }
+    }
+
+    private static final class PendingRow {
+        private final long line;
+        private final UserDto userDto;
+        private final String normalizedUsername;
+        private final String normalizedEmail;
+
+        private PendingRow(long line, UserDto userDto, String normalizedUsername, String normalizedEmail) {
+            this.line = line;
+            this.userDto = userDto;
+            this.normalizedUsername = normalizedUsername;
+            this.normalizedEmail = normalizedEmail;
+        }
+    }
+}
@@ -1,19 +1,51 @@
 package org.secureapp.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.secureapp.cache.LoginVerificationCache;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.cache.UserDetailsCache;
 import org.secureapp.dto.UserDto;
+import org.secureapp.dto.UserExportRow;
+import org.secureapp.dto.UserPage;
+import org.secureapp.dto.UserSearchField;
+import org.secureapp.dto.UserSearchPage;
 import org.secureapp.dto.UserUpdateDto;
+import org.secureapp.exception.PreconditionFailedException;
 import org.secureapp.exception.RecordAlreadyExistsException;
 import org.secureapp.mapper.UserDtoToUserMapper;
 import org.secureapp.model.User;
+import org.secureapp.repository.UserBatchRepository;
+import org.secureapp.repository.UserBatchRepository.UserKey;
 import org.secureapp.repository.UserRepository;
+import org.secureapp.repository.UserStreamRepository;
+import org.secureapp.service.RefreshTokenService;
 import org.secureapp.service.UserService;
 import org.secureapp.util.LoggedInUserHelper;
+import org.secureapp.util.UserETag;
 import org.secureapp.validation.ValidationHelper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static org.secureapp.util.TextNormalizer.normalize;
 
 @Service
 @Slf4j
@@ -31,15 +63,45 @@ public class UserServiceImpl implements UserService {
     @Autowired
     ValidationHelper validationHelper;
 
+    @Autowired
+    UserDetailsCache userDetailsCache;
+
+    @Autowired
+    LoginVerificationCache loginVerificationCache;
+
+    @Autowired
+    UserStreamRepository userStreamRepository;
+
+    @Autowired
+    RefreshTokenService refreshTokenService;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private static final int EXPORT_BUFFER_SIZE = 8192;
+
+    @Value("${user.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${user.page.max-size:500}")
+    private int maxPageSize;
+
     @Override
     public User find(String userName) {
         log.info("In find {}", userName);
         User user = null;
-        if (isCurrentLoggedInUserAdmin()) {
-            user = userRepository.findByUsernameIgnoreCase(userName);
+        boolean admin = isCurrentLoggedInUserAdmin();
+        if (admin) {
+            user = userRepository.findByNormalizedUsername(normalize(userName));
         }
-        if (!isCurrentLoggedInUserAdmin() && checkCurrentUserEqualUserNameParam(userName)) {
-            user = userRepository.findByUsernameIgnoreCase(loggedInUserHelper.getCurrentLoggedInUserName());
+        if (!admin && checkCurrentUserEqualUserNameParam(userName)) {
+            user = userRepository.findByNormalizedUsername(normalize(loggedInUserHelper.getCurrentLoggedInUserName()));
         }
 
         if (user == null) {
@@ -54,11 +116,12 @@ public class UserServiceImpl implements UserService {
     public String delete(String userName) {
         log.info("In delete {}", userName);
         User user = null;
-        if (isCurrentLoggedInUserAdmin()) {
-            user = userRepository.findByUsernameIgnoreCase(userName);
+        boolean admin = isCurrentLoggedInUserAdmin();
+        if (admin) {
+            user = userRepository.findByNormalizedUsername(normalize(userName));
         }
-        if (!isCurrentLoggedInUserAdmin() && checkCurrentUserEqualUserNameParam(userName)) {
-            user = userRepository.findByUsernameIgnoreCase(loggedInUserHelper.getCurrentLoggedInUserName());
+        if (!admin && checkCurrentUserEqualUserNameParam(userName)) {
+            user = userRepository.findByNormalizedUsername(normalize(loggedInUserHelper.getCurrentLoggedInUserName()));
         }
         if (user == null) {
             log.warn("Invalid user");
@@ -66,6 +129,17 @@ public class UserServiceImpl implements UserService {
         }
 
         userRepository.delete(user);
+        userDetailsCache.invalidate(user.getUsername());
+        loginVerificationCache.invalidate(user.getUsername());
+        refreshTokenService.revokeAll(user.getUsername());
+
+        // The cutoff reaches the other instances on their next token_revocation load,
+        // which also drops the user from their details caches
+        Instant cutoff = Instant.now().plusSeconds(1);
+        userBatchRepository.revokeTokensIssuedBefore(
+                Collections.singletonList(new UserKey(user.getId(), user.getNormalizedUsername())), cutoff);
+        tokenRevocationCache.revokeTokensIssuedBefore(
+                Collections.singletonList(user.getNormalizedUsername()), cutoff);
         return "DELETE_SUCCESS";
 
     }
@@ -73,37 +147,170 @@ public class UserServiceImpl implements UserService {
     @Override
     public List<User> findAllUsers() {
         log.info("In findAllUsers");
-        List<User> userList = (List<User>) userRepository.findAll();
+        List<User> userList = userRepository.findAllWithRoles();
         return userList;
     }
 
+    @Override
+    public UserPage findUsers(Long cursor, Integer size, String sort) {
+        log.info("In findUsers {} {} {}", cursor, size, sort);
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        Pageable pageable = PageRequest.of(0, pageSize);
+
+        List<User> users;
+        if ("desc".equalsIgnoreCase(sort)) {
+            users = userRepository.findByIdLessThanOrderByIdDesc(cursor == null ? Long.MAX_VALUE : cursor, pageable);
+        } else {
+            users = userRepository.findByIdGreaterThanOrderByIdAsc(cursor == null ? 0L : cursor, pageable);
+        }
+
+        Long nextCursor = users.size() == pageSize ? users.get(users.size() - 1).getId() : null;
+        return new UserPage(users, nextCursor);
+    }
+
+    @Override
+    public UserSearchPage searchUsers(String query, String field, String role, String cursor, Integer size) {
+        log.info("In searchUsers {} {} {}", field, role, size);
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        UserSearchField searchField = UserSearchField.valueOf(field.toUpperCase(Locale.ROOT));
+
+        // The cursor is <id>:<value>; the value may itself contain ':'
+        String afterValue = null;
+        long afterId = 0L;
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            afterId = Long.parseLong(cursor.substring(0, separator));
+            afterValue = cursor.substring(separator + 1);
+        }
+
+        List<User> users = userRepository.search(normalize(query), searchField, role, afterValue, afterId, pageSize);
+
+        String nextCursor = null;
+        if (users.size() == pageSize) {
+            User last = users.get(users.size() - 1);
+            nextCursor = last.getId() + ":" + searchField.getValue().apply(last);
+        }
+        return new UserSearchPage(users, nextCursor);
+    }
+
+    @Override
+    public void streamAllUsers(OutputStream outputStream) {
+        log.info("In streamAllUsers");
+        userStreamRepository.forEachUser(user -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(user));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes all users with their role names as gzip compressed CSV or NDJSON. Rows go
+     * from keyset pages through fixed size buffers to the response, so heap usage doesn't
+     * grow with the table and a slow client holds no database connection.
+     */
+    @Override
+    public void exportUsers(OutputStream outputStream, boolean csv) {
+        log.info("In exportUsers {}", csv ? "csv" : "ndjson");
+        try {
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, EXPORT_BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzipOutputStream, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+
+            if (csv) {
+                writer.write("username,firstname,lastname,email,roles\n");
+            }
+            userStreamRepository.forEachUserWithRoles(row -> {
+                try {
+                    if (csv) {
+                        writer.write(toCsvLine(row));
+                    } else {
+                        writer.write(objectMapper.writeValueAsString(row));
+                    }
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            writer.flush();
+            gzipOutputStream.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String toCsvLine(UserExportRow row) {
+        return String.join(",",
+                csvField(row.getUsername()),
+                csvField(row.getFirstname()),
+                csvField(row.getLastname()),
+                csvField(row.getEmail()),
+                csvField(String.join(";", row.getRoles())));
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        // Spreadsheets evaluate cells starting with these as formulas, neutralize them
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
     @Override
     public User save(UserDto userDto) {
         log.info("In save");
-        // Check if any user with same name/email exists
-        List<User> existingUsers = userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase(
-                userDto.getUsername(),
-                userDto.getEmail()
-        );
+        User user = userDtoToUserMapper.mapUserDtoToUser(userDto);
 
-        if (existingUsers.size() > 0) {
+        // Duplicate username/email are rejected by the unique indexes on the normalized columns
+        try {
+            return userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            if (!isDuplicateUser(e)) {
+                throw e;
+            }
             log.warn("User with the given username/email already exists");
             throw new RecordAlreadyExistsException("User with the given username/email already exists");
         }
+    }
 
-        User user = userDtoToUserMapper.mapUserDtoToUser(userDto);
-        return userRepository.save(user);
+    /*
+     * Whether the violated constraint is one of the unique indexes on username/email.
+     * Drivers report the name differently (MySQL prefixes the table, H2 upper-cases it
+     * and adds an index suffix), so it is matched as a case-insensitive substring.
+     */
+    private static boolean isDuplicateUser(DataIntegrityViolationException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+                if (constraintName == null) {
+                    return false;
+                }
+                constraintName = constraintName.toLowerCase(Locale.ROOT);
+                return constraintName.contains(User.USERNAME_UNIQUE_CONSTRAINT)
+                        || constraintName.contains(User.EMAIL_UNIQUE_CONSTRAINT);
+            }
+        }
+        return false;
     }
 
     @Override
-    public User update(UserUpdateDto userDto) {
+    public User update(UserUpdateDto userDto, String ifMatch) {
         log.info("In update");
         User user = null;
-        if (isCurrentLoggedInUserAdmin()) {
-            user = userRepository.findByUsernameIgnoreCase(userDto.getUsername());
+        boolean admin = isCurrentLoggedInUserAdmin();
+        if (admin) {
+            user = userRepository.findByNormalizedUsername(normalize(userDto.getUsername()));
         }
-        if (!isCurrentLoggedInUserAdmin() && checkCurrentUserEqualUserNameParam(userDto.getUsername())) {
-            user = userRepository.findByUsernameIgnoreCase(loggedInUserHelper.getCurrentLoggedInUserName());
+        if (!admin && checkCurrentUserEqualUserNameParam(userDto.getUsername())) {
+            user = userRepository.findByNormalizedUsername(normalize(loggedInUserHelper.getCurrentLoggedInUserName()));
         }
 
         if (user == null) {
@@ -111,11 +318,16 @@ public class UserServiceImpl implements UserService {
             validationHelper.throwInvalidUserException();
         }
 
+        if (!UserETag.matches(ifMatch, user)) {
+            log.warn("Stale If-Match {} for user {}", ifMatch, user.getUsername());
+            throw new PreconditionFailedException("User has been modified, reload it and retry");
+        }
+
         /* check if email already exists for any other user */
         User anotherUserWithSameEmailExists = userRepository
-                .findByUsernameNotIgnoreCaseAndEmailIgnoreCase(
-                        userDto.getUsername(),
-                        userDto.getEmail()
+                .findByNormalizedUsernameNotAndNormalizedEmail(
+                        normalize(userDto.getUsername()),
+                        normalize(userDto.getEmail())
                 );
 
         if (anotherUserWithSameEmailExists != null) {
@@ -126,7 +338,10 @@ public class UserServiceImpl implements UserService {
         user.setFirstname(userDto.getFirstname());
         user.setLastname(userDto.getLastname());
         user.setEmail(userDto.getEmail());
-        return userRepository.save(user);
+        User updatedUser = userRepository.save(user);
+        userDetailsCache.invalidate(updatedUser.getUsername());
+        loginVerificationCache.invalidate(updatedUser.getUsername());
+        return updatedUser;
     }
 
     public boolean isCurrentLoggedInUserAdmin() {
@@ -4,4 +4,7 @@ public class ApplicationConstants {
 
     public static final String ERROR_MSG = "An unknown error occured";
     public static final String SUCCESS_MSG = "Request Successfully processed";
+
+    public static final String ROLE_USER = "ROLE_USER";
+    public static final String ROLE_ADMIN = "ROLE_ADMIN";
 }
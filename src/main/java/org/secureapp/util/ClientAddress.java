@@ -0,0 +1,39 @@
+package org.secureapp.util;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+public final class ClientAddress {
+
+    /* Bytes of an IPv6 address that identify the /64 network, usually a single subscriber */
+    private static final int IPV6_NETWORK_BYTES = 8;
+
+    private ClientAddress() {
+    }
+
+    /**
+     * Key under which requests from the given remote address are rate limited. IPv4
+     * addresses are their own key; IPv6 addresses are grouped by /64, since a single
+     * client can pick any address inside its /64.
+     */
+    public static String rateLimitKey(String remoteAddr) {
+        if (remoteAddr == null || remoteAddr.indexOf(':') < 0) {
+            return remoteAddr;
+        }
+
+        try {
+            // A literal is parsed without any DNS lookup
+            InetAddress address = InetAddress.getByName(remoteAddr);
+            if (!(address instanceof Inet6Address)) {
+                return address.getHostAddress();
+            }
+            byte[] network = Arrays.copyOf(address.getAddress(), 16);
+            Arrays.fill(network, IPV6_NETWORK_BYTES, network.length, (byte) 0);
+            return InetAddress.getByAddress(network).getHostAddress() + "/64";
+        } catch (UnknownHostException e) {
+            return remoteAddr;
+        }
+    }
+}
@@ -1,35 +1,50 @@
 package org.secureapp.util;
 
-import org.secureapp.config.SecuredUserDetails;
+import org.secureapp.config.AuthenticatedUser;
+import org.secureapp.config.UserAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import static org.secureapp.util.ApplicationConstants.ROLE_ADMIN;
+
 @Component
 public class LoggedInUserHelper {
 
     public Long getCurrentLoggedInUserID() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        SecuredUserDetails userDetails = (SecuredUserDetails) authentication.getPrincipal();
+        if (authentication instanceof UserAuthenticationToken) {
+            return ((UserAuthenticationToken) authentication).getUserId();
+        }
+        AuthenticatedUser userDetails = (AuthenticatedUser) authentication.getPrincipal();
         return userDetails.getUserId();
     }
 
     public String getCurrentLoggedInUserName() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        SecuredUserDetails userDetails = (SecuredUserDetails) authentication.getPrincipal();
+        AuthenticatedUser userDetails = (AuthenticatedUser) authentication.getPrincipal();
         return userDetails.getUsername();
     }
 
     public boolean isCurrentLoggedInUserAdmin() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
+        // Resolved once per request by JwtAuthenticationFilter
+        if (authentication instanceof UserAuthenticationToken) {
+            return ((UserAuthenticationToken) authentication).isAdmin();
+        }
+
         return authentication
                 .getAuthorities()
                 .stream()
-                .anyMatch(role -> role.getAuthority().equals("ROLE_ADMIN"));
+                .anyMatch(role -> role.getAuthority().equals(ROLE_ADMIN));
     }
 
     public boolean checkCurrentUserEqualUserNameParam(String userName) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof UserAuthenticationToken) {
+            return TextNormalizer.normalize(userName).equals(((UserAuthenticationToken) authentication).getNormalizedUsername());
+        }
         return userName.equalsIgnoreCase(getCurrentLoggedInUserName());
     }
 }
@@ -0,0 +1,17 @@
+package org.secureapp.util;
+
+import java.util.Locale;
+
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Lower-cases usernames and emails the same way everywhere they are compared or
+     * stored in a normalized column, so lookups don't need case-insensitive predicates.
+     */
+    public static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+}
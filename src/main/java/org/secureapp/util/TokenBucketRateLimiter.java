@@ -0,0 +1,86 @@
+package org.secureapp.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free per-key token bucket. Each bucket is a single {@link AtomicLong} holding
+ * the time at which it will be full again (the GCRA form of a token bucket), updated
+ * with CAS; the key map is a {@link ConcurrentHashMap}, so contention is spread over
+ * its bins. The number of keys is bounded: once full, new keys share a single
+ * overflow bucket until {@link #evictExpired()}, run periodically off the request
+ * path, drops buckets that have refilled completely. Live buckets are never dropped,
+ * so flooding new keys can't reset the throttle of an existing one, and only the
+ * clients arriving during the flood share its limit.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long refillNanos;
+
+    private final long burstNanos;
+
+    private final int maxKeys;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong overflowBucket = new AtomicLong(System.nanoTime());
+
+    public TokenBucketRateLimiter(int capacity, long refillPeriodMillis, int maxKeys) {
+        this.refillNanos = TimeUnit.MILLISECONDS.toNanos(refillPeriodMillis);
+        this.burstNanos = (capacity - 1) * refillNanos;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Takes one token from the bucket of the given key.
+     *
+     * @return 0 if a token was available, otherwise the time in milliseconds until one will be
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.size() < maxKeys ? buckets.computeIfAbsent(key, k -> new AtomicLong(now)) : overflowBucket;
+        }
+
+        return acquire(bucket, now);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Drops the buckets that are full again; they behave exactly like a new bucket.
+     *
+     * @return the number of buckets dropped
+     */
+    public int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+
+        for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+            if (entry.getValue().get() - now <= 0 && buckets.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    private long acquire(AtomicLong bucket, long now) {
+        while (true) {
+            long fullAt = bucket.get();
+            long start = Math.max(fullAt, now);
+            long wait = start - now - burstNanos;
+            if (wait > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+            if (bucket.compareAndSet(fullAt, start + refillNanos)) {
+                return 0;
+            }
+        }
+    }
+}
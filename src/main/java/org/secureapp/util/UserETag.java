@@ -0,0 +1,31 @@
+package org.secureapp.util;
+
+import org.secureapp.model.User;
+
+public final class UserETag {
+
+    private UserETag() {
+    }
+
+    /**
+     * Strong ETag of a user's representation. The version changes on every update and
+     * the id tells apart a user re-created under the same username.
+     */
+    public static String of(User user) {
+        return "\"" + user.getId() + "-" + user.getVersion() + "\"";
+    }
+
+    /**
+     * If-Match uses the strong comparison, so weak tags never match.
+     */
+    public static boolean matches(String ifMatch, User user) {
+        String etag = of(user);
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
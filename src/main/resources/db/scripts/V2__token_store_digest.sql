@@ -0,0 +1,13 @@
+ALTER TABLE token_store ADD COLUMN token_digest BINARY(32) NULL;
+
+UPDATE token_store SET token_digest = UNHEX(SHA2(token, 256));
+
+-- Keep one row per revoked token so the unique index can be created
+DELETE t1 FROM token_store t1
+  JOIN token_store t2 ON t1.token_digest = t2.token_digest AND t1.id > t2.id;
+
+ALTER TABLE token_store MODIFY token_digest BINARY(32) NOT NULL;
+
+CREATE UNIQUE INDEX token_digest_uk ON token_store (token_digest);
+
+-- The token column is dropped by V3, once the expiry has been read from it
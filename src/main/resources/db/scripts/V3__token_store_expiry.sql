@@ -0,0 +1,26 @@
+ALTER TABLE token_store ADD COLUMN expires_at DATETIME NULL;
+ALTER TABLE token_store ADD COLUMN token_payload TEXT NULL;
+
+-- Decode the base64url payload of the revoked JWT (padded, as FROM_BASE64 requires)
+UPDATE token_store
+SET token_payload = CAST(FROM_BASE64(RPAD(
+        REPLACE(REPLACE(SUBSTRING_INDEX(SUBSTRING_INDEX(token, '.', 2), '.', -1), '-', '+'), '_', '/'),
+        CEIL(LENGTH(SUBSTRING_INDEX(SUBSTRING_INDEX(token, '.', 2), '.', -1)) / 4) * 4, '=')) AS CHAR);
+
+-- Every token this application issued carries its own expiry in the exp claim
+UPDATE token_store
+SET expires_at = FROM_UNIXTIME(JSON_EXTRACT(token_payload, '$.exp'))
+WHERE JSON_VALID(token_payload) AND JSON_EXTRACT(token_payload, '$.exp') IS NOT NULL;
+
+-- Tokens that can't be decoded get the longest lifetime a token could have when this
+-- migration was written: 300000 s, the jwt.token.validity of that release. Tokens
+-- issued later are written with their own expiry, so a later change of the property
+-- does not apply here.
+UPDATE token_store SET expires_at = DATE_ADD(NOW(), INTERVAL 300000 SECOND) WHERE expires_at IS NULL;
+
+ALTER TABLE token_store DROP COLUMN token_payload;
+ALTER TABLE token_store DROP COLUMN token;
+
+ALTER TABLE token_store MODIFY expires_at DATETIME NOT NULL;
+
+CREATE INDEX token_expires_at_idx ON token_store (expires_at);
@@ -0,0 +1,10 @@
+ALTER TABLE user ADD COLUMN username_normalized VARCHAR(45) NULL;
+ALTER TABLE user ADD COLUMN email_normalized VARCHAR(250) NULL;
+
+UPDATE user SET username_normalized = LOWER(username), email_normalized = LOWER(email);
+
+ALTER TABLE user MODIFY username_normalized VARCHAR(45) NOT NULL;
+
+-- Fails if existing accounts differ only by case; those have to be merged by hand first
+CREATE UNIQUE INDEX user_username_normalized_uk ON user (username_normalized);
+CREATE UNIQUE INDEX user_email_normalized_uk ON user (email_normalized);
@@ -0,0 +1,11 @@
+CREATE TABLE refresh_token (
+  id int NOT NULL AUTO_INCREMENT,
+  token_digest BINARY(32) NOT NULL,
+  username varchar(45) NOT NULL,
+  expires_at DATETIME NOT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE UNIQUE INDEX refresh_token_digest_uk ON refresh_token (token_digest);
+CREATE INDEX refresh_token_username_idx ON refresh_token (username);
+CREATE INDEX refresh_token_expires_at_idx ON refresh_token (expires_at);
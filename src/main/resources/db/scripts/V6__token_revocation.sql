@@ -0,0 +1,7 @@
+CREATE TABLE token_revocation (
+  username varchar(45) NOT NULL,
+  revoked_before DATETIME NOT NULL,
+  PRIMARY KEY (username)
+);
+
+CREATE INDEX token_revocation_revoked_before_idx ON token_revocation (revoked_before);
@@ -0,0 +1,9 @@
+ALTER TABLE user ADD COLUMN first_name_normalized VARCHAR(100) NULL;
+ALTER TABLE user ADD COLUMN last_name_normalized VARCHAR(100) NULL;
+
+UPDATE user SET first_name_normalized = LOWER(first_name), last_name_normalized = LOWER(last_name);
+
+-- Searches page on (column, user_id). Username/email use the unique indexes from V4,
+-- where the value alone orders the page; names repeat, so their indexes carry the id
+CREATE INDEX user_first_name_normalized_idx ON user (first_name_normalized, user_id);
+CREATE INDEX user_last_name_normalized_idx ON user (last_name_normalized, user_id);
@@ -0,0 +1,9 @@
+ALTER TABLE refresh_token ADD COLUMN family_id BINARY(16) NULL;
+ALTER TABLE refresh_token ADD COLUMN consumed_at DATETIME NULL;
+
+-- Every existing token starts its own family
+UPDATE refresh_token SET family_id = UNHEX(REPLACE(UUID(), '-', ''));
+
+ALTER TABLE refresh_token MODIFY family_id BINARY(16) NOT NULL;
+
+CREATE INDEX refresh_token_family_idx ON refresh_token (family_id);
@@ -0,0 +1,77 @@
+package org.secureapp.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secureapp.model.TokenStore;
+import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.util.TokenDigest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@EnableAutoConfiguration(exclude= FlywayAutoConfiguration.class)
+public class RevokedTokenCacheTest {
+
+    @Autowired
+    RevokedTokenCache revokedTokenCache;
+
+    @Autowired
+    BlackListedTokenRepository blackListedTokenRepository;
+
+    @Before
+    public void init() {
+        blackListedTokenRepository.deleteAll();
+        revokedTokenCache.rebuild();
+    }
+
+    @Test
+    public void tokenRevokedByAnotherInstanceShouldBeRejectedAfterSync() {
+        // Written straight to the table, as another instance handling the logout would
+        TokenStore tokenStore = new TokenStore();
+        tokenStore.setTokenDigest(TokenDigest.sha256("revoked-elsewhere"));
+        tokenStore.setUsername("username_0");
+        tokenStore.setExpiresAt(Instant.now().plusSeconds(60));
+        blackListedTokenRepository.save(tokenStore);
+
+        assertFalse(revokedTokenCache.isRevoked("revoked-elsewhere"));
+
+        revokedTokenCache.loadNewRevocations();
+
+        assertTrue(revokedTokenCache.isRevoked("revoked-elsewhere"));
+        assertFalse(revokedTokenCache.isRevoked("never-revoked"));
+    }
+
+    @Test
+    public void filterShouldOnlyBeRebuiltOnceEnoughEntriesArePurged() {
+        List<TokenStore> tokens = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TokenStore tokenStore = new TokenStore();
+            tokenStore.setTokenDigest(TokenDigest.sha256("revoked-" + i));
+            tokenStore.setUsername("username_0");
+            tokenStore.setExpiresAt(Instant.now().plusSeconds(60));
+            tokens.add(blackListedTokenRepository.save(tokenStore));
+        }
+        revokedTokenCache.rebuild();
+
+        // Purged by another instance, the default rebuild fraction is 0.2
+        blackListedTokenRepository.deleteAll(tokens.subList(0, 2));
+        assertFalse(revokedTokenCache.rebuildIfStale());
+
+        blackListedTokenRepository.delete(tokens.get(2));
+        assertTrue(revokedTokenCache.rebuildIfStale());
+        assertFalse(revokedTokenCache.rebuildIfStale());
+        assertTrue(revokedTokenCache.isRevoked("revoked-3"));
+    }
+}
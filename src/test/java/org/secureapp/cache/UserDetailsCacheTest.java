@@ -0,0 +1,126 @@
+package org.secureapp.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secureapp.config.SecuredUserDetails;
+import org.secureapp.model.TokenRevocation;
+import org.secureapp.model.User;
+import org.secureapp.repository.TokenRevocationRepository;
+import org.secureapp.util.TestUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@EnableAutoConfiguration(exclude= FlywayAutoConfiguration.class)
+public class UserDetailsCacheTest {
+
+    @Autowired
+    UserDetailsCache userDetailsCache;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    TokenRevocationRepository tokenRevocationRepository;
+
+    @Autowired
+    TestUtil testUtil;
+
+    @Before
+    public void init() {
+        tokenRevocationRepository.deleteAll();
+        tokenRevocationCache.reload();
+    }
+
+    @Test
+    public void cachedDetailsShouldBeReturnedUntilInvalidated()
+    {
+        SecuredUserDetails userDetails = userDetails(0);
+        userDetailsCache.put(userDetails);
+
+        assertSame(userDetails, userDetailsCache.get("USERNAME_0"));
+
+        userDetailsCache.invalidate("Username_0");
+        assertNull(userDetailsCache.get("username_0"));
+    }
+
+    @Test
+    public void cachedDetailsShouldExpireAfterTtl() throws InterruptedException
+    {
+        UserDetailsCache cache = newCache(100, 50);
+        cache.put(userDetails(0));
+        assertNotNull(cache.get("username_0"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("username_0"));
+    }
+
+    @Test
+    public void cacheShouldEvictLeastRecentlyUsedDetailsBeyondMaxSize()
+    {
+        UserDetailsCache cache = newCache(16, 60000);
+        for (int i = 0; i < 200; i++) {
+            cache.put(userDetails(i));
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 200; i++) {
+            if (cache.get("username_" + i) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 16);
+        assertNotNull(cache.get("username_199"));
+    }
+
+    @Test
+    public void cutoffLoadedFromAnotherInstanceShouldInvalidateCachedDetails()
+    {
+        userDetailsCache.put(userDetails(0));
+        userDetailsCache.put(userDetails(1));
+
+        // Written straight to the table, as another instance deleting the user would
+        tokenRevocationRepository.save(new TokenRevocation("username_0", Instant.now().plusSeconds(1)));
+        tokenRevocationCache.loadNew();
+
+        assertNull(userDetailsCache.get("username_0"));
+        assertNotNull(userDetailsCache.get("username_1"));
+
+        // Re-reading the same cutoff within the lag window keeps details cached since
+        SecuredUserDetails userDetails = userDetails(0);
+        userDetailsCache.put(userDetails);
+        tokenRevocationCache.loadNew();
+        assertSame(userDetails, userDetailsCache.get("username_0"));
+    }
+
+    private SecuredUserDetails userDetails(int index) {
+        User user = testUtil.generateUsers(1).get(0);
+        user.setUsername("username_" + index);
+        user.setRoles(new HashSet<>());
+        return new SecuredUserDetails(user);
+    }
+
+    private UserDetailsCache newCache(int maxSize, long ttlMillis) {
+        UserDetailsCache cache = new UserDetailsCache();
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        ReflectionTestUtils.setField(cache, "ttlMillis", ttlMillis);
+        cache.meterRegistry = new SimpleMeterRegistry();
+        cache.init();
+        return cache;
+    }
+}
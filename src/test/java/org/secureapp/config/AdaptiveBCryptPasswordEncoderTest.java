@@ -0,0 +1,40 @@
+package org.secureapp.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBCryptPasswordEncoderTest {
+
+    @Test
+    public void hashWithCurrentCostShouldNotBeUpgraded()
+    {
+        AdaptiveBCryptPasswordEncoder encoder=new AdaptiveBCryptPasswordEncoder(5);
+        String hash=encoder.encode("Passw0rd!");
+
+        assertTrue(encoder.matches("Passw0rd!",hash));
+        assertFalse(encoder.upgradeEncoding(hash));
+    }
+
+    @Test
+    public void onlyHashWithLowerCostShouldBeUpgraded()
+    {
+        String lowerCostHash=new AdaptiveBCryptPasswordEncoder(4).encode("Passw0rd!");
+        String higherCostHash=new AdaptiveBCryptPasswordEncoder(6).encode("Passw0rd!");
+        AdaptiveBCryptPasswordEncoder encoder=new AdaptiveBCryptPasswordEncoder(5);
+
+        assertTrue(encoder.upgradeEncoding(lowerCostHash));
+        assertFalse(encoder.upgradeEncoding(higherCostHash));
+        assertTrue(encoder.matches("Passw0rd!",higherCostHash));
+    }
+
+    @Test
+    public void calibratedCostShouldStayWithinBounds()
+    {
+        AdaptiveBCryptPasswordEncoder encoder=AdaptiveBCryptPasswordEncoder.forTargetHashTime(10_000,4,6);
+
+        assertEquals(6,encoder.getStrength());
+    }
+}
@@ -0,0 +1,124 @@
+package org.secureapp.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.cache.LoginVerificationCache;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingDaoAuthenticationProviderTest {
+
+    private static final String HASH = "$2a$10$pucWsSNzuh1.2LgddoCHkeZhT19R5Ku3b2GK5Aw6XDMwd665vsrRi";
+
+    private static final String NEW_HASH = "$2a$10$Qe1cS0eOQWz4SvTq2vGmUu0Hh6oA3mbSrOqgT7Z0y1qL2G1M3lQxK";
+
+    CachingDaoAuthenticationProvider authenticationProvider;
+
+    LoginVerificationCache loginVerificationCache;
+
+    UserDetailsService userDetailsService;
+
+    PasswordEncoder passwordEncoder;
+
+    @Before
+    public void init() {
+        loginVerificationCache=new LoginVerificationCache();
+        ReflectionTestUtils.setField(loginVerificationCache,"enabled",true);
+        ReflectionTestUtils.setField(loginVerificationCache,"maxSize",100);
+        ReflectionTestUtils.setField(loginVerificationCache,"ttlMillis",60000L);
+        ReflectionTestUtils.setField(loginVerificationCache,"meterRegistry",new SimpleMeterRegistry());
+        loginVerificationCache.init();
+
+        userDetailsService=mock(UserDetailsService.class);
+        storedHash(HASH);
+
+        passwordEncoder=mock(PasswordEncoder.class);
+        when(passwordEncoder.matches("welcome123",HASH)).thenReturn(true);
+        when(passwordEncoder.matches("welcome123",NEW_HASH)).thenReturn(true);
+
+        authenticationProvider=new CachingDaoAuthenticationProvider(loginVerificationCache);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+    }
+
+    @Test
+    public void repeatedLoginShouldSkipThePasswordEncoder()
+    {
+        login("welcome123");
+        login("welcome123");
+
+        verify(passwordEncoder,times(1)).matches("welcome123",HASH);
+    }
+
+    @Test
+    public void differentPasswordShouldMissTheCache()
+    {
+        login("welcome123");
+
+        try {
+            login("welcome124");
+            fail("Expected bad credentials");
+        } catch (BadCredentialsException e) {
+            verify(passwordEncoder,times(1)).matches("welcome124",HASH);
+        }
+    }
+
+    @Test
+    public void changedStoredHashShouldMissTheCache()
+    {
+        login("welcome123");
+
+        // Password changed, or re-hashed with a higher cost, on another instance
+        storedHash(NEW_HASH);
+        login("welcome123");
+        login("welcome123");
+
+        verify(passwordEncoder,times(1)).matches("welcome123",HASH);
+        verify(passwordEncoder,times(1)).matches("welcome123",NEW_HASH);
+    }
+
+    @Test
+    public void invalidatedUserShouldMissTheCache()
+    {
+        login("welcome123");
+        loginVerificationCache.invalidate("USERNAME_0");
+        login("welcome123");
+
+        verify(passwordEncoder,times(2)).matches("welcome123",HASH);
+    }
+
+    @Test
+    public void disabledCacheShouldAlwaysRunThePasswordEncoder()
+    {
+        ReflectionTestUtils.setField(loginVerificationCache,"enabled",false);
+
+        login("welcome123");
+        login("welcome123");
+
+        verify(passwordEncoder,times(2)).matches("welcome123",HASH);
+    }
+
+    private void storedHash(String hash) {
+        when(userDetailsService.loadUserByUsername(anyString())).thenReturn(
+                new User("username_0",hash,Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    private void login(String password) {
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("username_0",password));
+    }
+}
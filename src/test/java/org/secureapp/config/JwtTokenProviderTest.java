@@ -0,0 +1,99 @@
+package org.secureapp.config;
+
+import io.jsonwebtoken.JwtException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.secureapp.service.RoleService;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class JwtTokenProviderTest {
+
+    private static final String SIGNING_KEY = "hghjhkjhkhkhjJHJHHKJJHkhjhGHJHKHjhkjhjJH<JHKJHKhgfgfdtfuiuyYUIkutfRDTRdtfyf";
+
+    private static final String ROTATED_SIGNING_KEY = "KJHkjhkjhGFDfdsgfdGFDgfdsgfdGHJhjkJHKjhkjhHGFhgfhgfHGFhgfjhgJHGjhgjhgJHGjhg";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    JwtTokenProvider jwtTokenProvider;
+
+    File keyFile;
+
+    @Before
+    public void init() throws Exception {
+        keyFile=temporaryFolder.newFile("jwt-signing.key");
+        writeKey(SIGNING_KEY);
+
+        jwtTokenProvider=new JwtTokenProvider();
+        jwtTokenProvider.TOKEN_VALIDITY=60;
+        jwtTokenProvider.SIGNING_KEY="";
+        jwtTokenProvider.SIGNING_KEY_FILE=keyFile.getAbsolutePath();
+        jwtTokenProvider.AUTHORITIES_KEY="roles";
+        jwtTokenProvider.rsaKeyManager=mock(RsaKeyManager.class);
+        jwtTokenProvider.roleService=mock(RoleService.class);
+        jwtTokenProvider.init();
+    }
+
+    @Test
+    public void changedKeyFileShouldReplaceTheSigningKey() throws Exception
+    {
+        String token=generateToken();
+        assertEquals("username_0",jwtTokenProvider.parseToken(token).getUsername());
+
+        writeKey(ROTATED_SIGNING_KEY);
+        jwtTokenProvider.reloadSigningKey();
+
+        try {
+            jwtTokenProvider.parseToken(token);
+            fail("Token signed with the previous key should not validate");
+        } catch (JwtException e) {
+            // expected
+        }
+        assertEquals("username_0",jwtTokenProvider.parseToken(generateToken()).getUsername());
+    }
+
+    @Test
+    public void unchangedKeyFileShouldKeepTheSigningKey() throws Exception
+    {
+        String token=generateToken();
+
+        // Trailing whitespace, e.g. a newline added by the secret mount, is ignored
+        writeKey(SIGNING_KEY+"\n");
+        jwtTokenProvider.reloadSigningKey();
+
+        assertEquals("username_0",jwtTokenProvider.parseToken(token).getUsername());
+    }
+
+    @Test
+    public void unreadableKeyFileShouldKeepTheCurrentKey() throws Exception
+    {
+        String token=generateToken();
+
+        Files.delete(keyFile.toPath());
+        jwtTokenProvider.reloadSigningKey();
+
+        assertEquals("username_0",jwtTokenProvider.parseToken(token).getUsername());
+        assertEquals("username_0",jwtTokenProvider.parseToken(generateToken()).getUsername());
+    }
+
+    private String generateToken() {
+        return jwtTokenProvider.generateToken(new UsernamePasswordAuthenticationToken("username_0",null,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    private void writeKey(String key) throws Exception {
+        Files.write(keyFile.toPath(),key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,115 @@
+package org.secureapp.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.exception.ServiceUnavailableException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PasswordHashingExecutorTest {
+
+    PasswordHashingExecutor passwordHashingExecutor;
+
+    SimpleMeterRegistry meterRegistry;
+
+    ExecutorService callers;
+
+    CountDownLatch release;
+
+    @Before
+    public void init() {
+        meterRegistry=new SimpleMeterRegistry();
+        passwordHashingExecutor=new PasswordHashingExecutor();
+        ReflectionTestUtils.setField(passwordHashingExecutor,"threads",1);
+        ReflectionTestUtils.setField(passwordHashingExecutor,"queueCapacity",1);
+        ReflectionTestUtils.setField(passwordHashingExecutor,"timeoutMillis",10_000L);
+        passwordHashingExecutor.meterRegistry=meterRegistry;
+        passwordHashingExecutor.init();
+
+        callers=Executors.newFixedThreadPool(2);
+        release=new CountDownLatch(1);
+    }
+
+    @After
+    public void cleanup() {
+        release.countDown();
+        callers.shutdownNow();
+        passwordHashingExecutor.shutdown();
+    }
+
+    @Test
+    public void hashingBeyondInFlightLimitShouldBeRejected() throws Exception
+    {
+        // One hash running and one queued fill the pool
+        Future<Integer> running=callers.submit(() -> passwordHashingExecutor.execute(this::blockedHash));
+        Future<Integer> queued=callers.submit(() -> passwordHashingExecutor.execute(this::blockedHash));
+        awaitAvailablePermits(0);
+
+        try {
+            passwordHashingExecutor.execute(() -> 1);
+            fail("Expected a 503");
+        } catch (ServiceUnavailableException e) {
+            assertEquals(1.0,meterRegistry.counter("password.hashing.rejected").count(),0.0);
+        }
+
+        release.countDown();
+        assertEquals(Integer.valueOf(1),running.get(5,TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1),queued.get(5,TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2),passwordHashingExecutor.execute(() -> 2));
+    }
+
+    @Test
+    public void timedOutHashShouldHoldItsSlotUntilItCompletes() throws Exception
+    {
+        ReflectionTestUtils.setField(passwordHashingExecutor,"timeoutMillis",50L);
+
+        try {
+            passwordHashingExecutor.execute(this::blockedHash);
+            fail("Expected a 503");
+        } catch (ServiceUnavailableException e) {
+            // The hash keeps running, the caller got its 503
+        }
+        assertEquals(1,inFlight().availablePermits());
+
+        // A queued hash that times out is withdrawn and frees its slot right away
+        try {
+            passwordHashingExecutor.execute(() -> 1);
+            fail("Expected a 503");
+        } catch (ServiceUnavailableException e) {
+            assertEquals(1,inFlight().availablePermits());
+        }
+
+        release.countDown();
+        awaitAvailablePermits(2);
+    }
+
+    private Integer blockedHash() throws InterruptedException {
+        release.await();
+        return 1;
+    }
+
+    private Semaphore inFlight() {
+        return (Semaphore) ReflectionTestUtils.getField(passwordHashingExecutor,"inFlight");
+    }
+
+    private void awaitAvailablePermits(int permits) throws InterruptedException {
+        long deadline=System.currentTimeMillis()+5000;
+        while (inFlight().availablePermits()!=permits) {
+            if (System.currentTimeMillis()>deadline) {
+                fail("In-flight permits never reached "+permits);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.secureapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secureapp.model.LoginUser;
+import org.secureapp.model.Role;
+import org.secureapp.model.User;
+import org.secureapp.repository.RoleRepository;
+import org.secureapp.repository.UserRepository;
+import org.secureapp.service.RoleService;
+import org.secureapp.util.TestUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@EnableAutoConfiguration(exclude= FlywayAutoConfiguration.class)
+@TestPropertySource(properties = {
+        "jwt.signing.algorithm=RS256",
+        "jwt.rsa.keystore.location=classpath:jwt-signing-test.p12",
+        "jwt.rsa.keystore.password=changeit"
+})
+public class JwksControllerTest {
+
+    @Autowired
+    public MockMvc mockMvc;
+
+    @Autowired
+    TestUtil testUtil;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    RoleRepository roleRepository;
+
+    @Autowired
+    RoleService roleService;
+
+    @Before
+    public void init() {
+
+        userRepository.deleteAll();
+        roleRepository.deleteAll();
+
+        Role userRole=new Role();
+        userRole.setName("ROLE_USER");
+        roleRepository.save(userRole);
+        roleService.refresh();
+
+        User user=testUtil.generateUsers(1).get(0);
+        Set<Role> roleSet = new HashSet<>();
+        roleSet.add(userRole);
+        user.setRoles(roleSet);
+        userRepository.save(user);
+    }
+
+    @Test
+    public void jwksEndPointShouldBeCacheableAndAccessibleWithoutLogin() throws Exception {
+        MvcResult result =mockMvc.perform(get("/.well-known/jwks.json"))
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        assertTrue(result.getResponse().getHeader("Cache-Control").contains("max-age"));
+    }
+
+    @Test
+    public void rs256TokenShouldCarryPublishedKeyId() throws Exception {
+        MvcResult result =mockMvc.perform(
+                post("/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(new LoginUser("username_0","welcome123")))
+        )
+                .andReturn();
+
+        String token=new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("token").asText();
+        JsonNode header=new ObjectMapper().readTree(
+                new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]), StandardCharsets.UTF_8));
+        assertEquals("RS256",header.get("alg").asText());
+
+        result =mockMvc.perform(get("/.well-known/jwks.json"))
+                .andReturn();
+        JsonNode keys=new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("keys");
+        // key-next is published already but its notBefore is in the year 9999, so it never signs
+        assertEquals(2,keys.size());
+        assertEquals("key-2020",header.get("kid").asText());
+        assertEquals("key-2020",keys.get(0).get("kid").asText());
+        assertEquals("key-next",keys.get(1).get("kid").asText());
+
+        result =mockMvc.perform(
+                get("/user/getuser").param("userName","username_0")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization","Bearer "+token)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+    }
+}
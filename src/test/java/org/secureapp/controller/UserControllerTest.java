@@ -1,20 +1,30 @@
 package org.secureapp.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.dto.BulkRoleAssignment;
+import org.secureapp.dto.BulkUserSelection;
 import org.secureapp.dto.UserDto;
 import org.secureapp.dto.UserUpdateDto;
 import org.secureapp.model.LoginUser;
+import org.secureapp.model.RefreshTokenRequest;
 import org.secureapp.model.Role;
 import org.secureapp.model.User;
 import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.repository.RefreshTokenRepository;
 import org.secureapp.repository.RoleRepository;
+import org.secureapp.repository.TokenRevocationRepository;
 import org.secureapp.repository.UserRepository;
+import org.secureapp.service.RoleService;
 import org.secureapp.util.LoggedInUserHelper;
 import org.secureapp.util.TestUtil;
+import org.secureapp.util.UserETag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
@@ -26,10 +36,20 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -51,12 +71,24 @@ public class UserControllerTest {
     @Autowired
     RoleRepository roleRepository;
 
+    @Autowired
+    RoleService roleService;
+
     @Autowired
     LoggedInUserHelper loggedInUserHelper;
 
     @Autowired
     BlackListedTokenRepository blackListedTokenRepository;
 
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    TokenRevocationRepository tokenRevocationRepository;
+
+    @Autowired
+    TokenRevocationCache tokenRevocationCache;
+
     @Rule
     public ExpectedException exceptionRule = ExpectedException.none();
 
@@ -66,6 +98,9 @@ public class UserControllerTest {
         userRepository.deleteAll();
         roleRepository.deleteAll();
         blackListedTokenRepository.deleteAll();
+        refreshTokenRepository.deleteAll();
+        tokenRevocationRepository.deleteAll();
+        tokenRevocationCache.reload();
 
         Role userRole=new Role();
         userRole.setName("ROLE_USER");
@@ -73,6 +108,7 @@ public class UserControllerTest {
         adminRole.setName("ROLE_ADMIN");
         roleRepository.save(userRole);
         roleRepository.save(adminRole);
+        roleService.refresh();
 
     }
 
@@ -232,6 +268,84 @@ public class UserControllerTest {
         assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
     }
 
+    @Test
+    public void getUsersEndPointShouldReturnUsersPageByPage() throws Exception {
+
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        List<User> users=testUtil.generateUsers(3);
+        userRepository.save(users.get(1));
+        userRepository.save(users.get(2));
+
+        MvcResult result =mockMvc.perform(
+                get("/user/getusers").param("size","2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        JsonNode page=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(2,page.get("users").size());
+        assertTrue(page.get("nextCursor").isNumber());
+
+        result =mockMvc.perform(
+                get("/user/getusers").param("size","2")
+                        .param("cursor",page.get("nextCursor").asText())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        page=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(1,page.get("users").size());
+        assertTrue(page.get("nextCursor").isNull());
+    }
+
+    @Test
+    public void searchEndPointShouldMatchPrefixesFilterByRoleAndPaginate() throws Exception {
+
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        List<User> users=testUtil.generateUsers(12);
+        for(int i=1;i<users.size();i++) {
+            userRepository.save(users.get(i));
+        }
+
+        MvcResult result =mockMvc.perform(
+                get("/user/search").param("q","FIRSTNAME1").param("field","firstname").param("size","2")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        JsonNode page=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(2,page.get("users").size());
+        assertEquals("username_1",page.get("users").get(0).get("username").asText());
+
+        result =mockMvc.perform(
+                get("/user/search").param("q","FIRSTNAME1").param("field","firstname").param("size","2")
+                        .param("cursor",page.get("nextCursor").asText())
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        page=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(1,page.get("users").size());
+        assertEquals("username_11",page.get("users").get(0).get("username").asText());
+        assertTrue(page.get("nextCursor").isNull());
+
+        result =mockMvc.perform(
+                get("/user/search").param("q","username_").param("role","ROLE_ADMIN")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        page=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(1,page.get("users").size());
+        assertEquals("username_0",page.get("users").get(0).get("username").asText());
+    }
+
     @Test
     public void updateUserEndPointShouldNotBeAccessibleIfNotLoggedIn() throws Exception {
         UserUpdateDto userUpdateDto=new UserUpdateDto();
@@ -263,6 +377,7 @@ public class UserControllerTest {
                 put("/user/update")
                         .contentType(MediaType.APPLICATION_JSON).content(content)
                         .header("Authorization","Bearer "+authToken)
+                        .header("If-Match",UserETag.of(userRepository.findByNormalizedUsername("username_0")))
         )
                 .andReturn();
 
@@ -286,6 +401,78 @@ public class UserControllerTest {
                 put("/user/update")
                         .contentType(MediaType.APPLICATION_JSON).content(content)
                         .header("Authorization","Bearer "+authToken)
+                        .header("If-Match",UserETag.of(userRepository.findByNormalizedUsername("username_0")))
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+    }
+
+    @Test
+    public void getUserAndUpdateUserEndPointsShouldHonourETags() throws Exception {
+
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_USER");
+
+        MvcResult result =mockMvc.perform(
+                get("/user/getuser").param("userName","username_0")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        String etag=result.getResponse().getHeader("ETag");
+
+        result =mockMvc.perform(
+                get("/user/getuser").param("userName","username_0")
+                        .header("Authorization","Bearer "+authToken)
+                        .header("If-None-Match",etag)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(),result.getResponse().getStatus());
+        assertEquals("",result.getResponse().getContentAsString());
+
+        String content=testUtil.mapToJson(UserUpdateDto.builder().username("username_0")
+                .firstname("DUMMY_FIRSTNAME")
+                .lastname("DUMMY_LASTNAME")
+                .email("changed@email.test")
+                .build());
+
+        result =mockMvc.perform(
+                put("/user/update")
+                        .contentType(MediaType.APPLICATION_JSON).content(content)
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.PRECONDITION_REQUIRED.value(),result.getResponse().getStatus());
+
+        result =mockMvc.perform(
+                put("/user/update")
+                        .contentType(MediaType.APPLICATION_JSON).content(content)
+                        .header("Authorization","Bearer "+authToken)
+                        .header("If-Match",etag)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        assertNotEquals(etag,result.getResponse().getHeader("ETag"));
+
+        // The first update changed the version, a second one based on the same read is rejected
+        result =mockMvc.perform(
+                put("/user/update")
+                        .contentType(MediaType.APPLICATION_JSON).content(content)
+                        .header("Authorization","Bearer "+authToken)
+                        .header("If-Match",etag)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED.value(),result.getResponse().getStatus());
+
+        result =mockMvc.perform(
+                get("/user/getuser").param("userName","username_0")
+                        .header("Authorization","Bearer "+authToken)
+                        .header("If-None-Match",etag)
         )
                 .andReturn();
 
@@ -484,6 +671,323 @@ public class UserControllerTest {
     }
 
 
+    @Test
+    public void refreshEndPointShouldRotateRefreshToken() throws Exception {
+        User user=testUtil.generateUsers(1).get(0);
+        Role role = roleRepository.findByName("ROLE_USER");
+        Set<Role> roleSet = new HashSet<>();
+        roleSet.add(new Role(role.getId(),"ROLE_USER"));
+        user.setRoles(roleSet);
+        userRepository.save(user);
+
+        MvcResult result =mockMvc.perform(
+                post("/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(new LoginUser("username_0","welcome123")))
+        )
+                .andReturn();
+
+        String refreshToken=new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("refreshToken").asText();
+        String content=testUtil.mapToJson(new RefreshTokenRequest(refreshToken));
+
+        result =mockMvc.perform(
+                post("/user/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        JsonNode authToken=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertTrue(authToken.hasNonNull("token"));
+        assertTrue(authToken.hasNonNull("refreshToken"));
+
+        result =mockMvc.perform(
+                get("/user/getuser").param("userName","username_0")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization","Bearer "+authToken.get("token").asText())
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+
+        // A refresh token can only be used once
+        result =mockMvc.perform(
+                post("/user/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.UNAUTHORIZED.value(),result.getResponse().getStatus());
+    }
+
+    @Test
+    public void reusedRefreshTokenShouldRevokeItsWholeFamily() throws Exception {
+        User user=testUtil.generateUsers(1).get(0);
+        Role role = roleRepository.findByName("ROLE_USER");
+        Set<Role> roleSet = new HashSet<>();
+        roleSet.add(new Role(role.getId(),"ROLE_USER"));
+        user.setRoles(roleSet);
+        userRepository.save(user);
+
+        String stolenRefreshToken=loginAndGetRefreshToken();
+        String otherLoginRefreshToken=loginAndGetRefreshToken();
+
+        // The legitimate client rotates the token twice
+        MvcResult result=refresh(stolenRefreshToken);
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        result=refresh(new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("refreshToken").asText());
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        String latestRefreshToken=new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("refreshToken").asText();
+
+        // Replaying the first token revokes every token rotated from it
+        assertEquals(HttpStatus.UNAUTHORIZED.value(),refresh(stolenRefreshToken).getResponse().getStatus());
+        assertEquals(HttpStatus.UNAUTHORIZED.value(),refresh(latestRefreshToken).getResponse().getStatus());
+
+        // Tokens of other logins are left alone
+        assertEquals(HttpStatus.OK.value(),refresh(otherLoginRefreshToken).getResponse().getStatus());
+    }
+
+    @Test
+    public void bulkImportEndPointShouldImportValidRowsAndReportInvalidOnes() throws Exception {
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        String content="username,password,firstname,lastname,email\n"+
+                "bulk_user_1,welcome123,Bulk,One,bulk1@test.com\n"+
+                "\"bulk_user_2\",welcome123,\"Bulk, Jr\",Two,bulk2@test.com\n"+
+                "bulk_user_3,short,Bulk,Three,bulk3@test.com\n"+
+                "USERNAME_0,welcome123,Bulk,Four,bulk4@test.com\n";
+
+        MvcResult result =mockMvc.perform(
+                post("/user/bulk-import")
+                        .contentType("text/csv")
+                        .content(content)
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        JsonNode report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(2,report.get("imported").asInt());
+        assertEquals(2,report.get("failed").asInt());
+        assertEquals("FAILED",report.get("rows").get(2).get("status").asText());
+        assertEquals("FAILED",report.get("rows").get(3).get("status").asText());
+
+        User imported=userRepository.findByNormalizedUsername("bulk_user_2");
+        assertEquals("Bulk, Jr",imported.getFirstname());
+        assertEquals(1,imported.getRoles().size());
+    }
+
+    @Test
+    public void bulkEndPointsShouldChangeRolesDeleteUsersAndRevokeTokens() throws Exception {
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        mockMvc.perform(
+                post("/user/bulk-import")
+                        .contentType("text/csv")
+                        .content("username,password,firstname,lastname,email\n"+
+                                "bulk_user_1,welcome123,Bulk,One,bulk1@test.com\n"+
+                                "bulk_user_2,welcome123,Bulk,Two,bulk2@test.com\n"+
+                                "bulk_user_3,welcome123,Bulk,Three,bulk3@test.com\n")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        MvcResult result =mockMvc.perform(
+                post("/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(new LoginUser("bulk_user_3","welcome123")))
+        )
+                .andReturn();
+        String bulkUserToken=new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("token").asText();
+
+        BulkRoleAssignment grant=new BulkRoleAssignment();
+        grant.setUsernames(Arrays.asList("BULK_USER_1","bulk_user_2","missing_user"));
+        grant.setRole("ROLE_ADMIN");
+        result =mockMvc.perform(
+                post("/user/bulk-roles/grant")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(grant))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        JsonNode report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(2,report.get("matchedUsers").asInt());
+        assertEquals(2,report.get("affectedRows").asInt());
+        assertEquals(2,userRepository.findByNormalizedUsername("bulk_user_1").getRoles().size());
+
+        // Stripping a role cuts off the tokens issued before it
+        BulkRoleAssignment strip=new BulkRoleAssignment();
+        strip.setUsernames(Collections.singletonList("bulk_user_3"));
+        strip.setRole("ROLE_USER");
+        result =mockMvc.perform(
+                post("/user/bulk-roles/revoke")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(strip))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(1,report.get("affectedRows").asInt());
+
+        result =mockMvc.perform(
+                get("/user/getuser").param("userName","bulk_user_3")
+                        .header("Authorization","Bearer "+bulkUserToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.UNAUTHORIZED.value(),result.getResponse().getStatus());
+
+        BulkUserSelection selection=new BulkUserSelection();
+        selection.setUsernamePrefix("bulk_");
+        result =mockMvc.perform(
+                post("/user/bulk-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(selection))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(3,report.get("matchedUsers").asInt());
+        assertEquals(3,report.get("affectedRows").asInt());
+        assertEquals(1,userRepository.count());
+
+        // The calling admin is never deleted nor stripped of a role
+        BulkUserSelection self=new BulkUserSelection();
+        self.setUsernamePrefix("username_");
+        result =mockMvc.perform(
+                post("/user/bulk-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(self))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(0,report.get("matchedUsers").asInt());
+        assertEquals(1,userRepository.count());
+
+        // Granting a role the user already holds changes nothing and keeps the token valid
+        BulkRoleAssignment regrant=new BulkRoleAssignment();
+        regrant.setUsernames(Collections.singletonList("username_0"));
+        regrant.setRole("ROLE_ADMIN");
+        result =mockMvc.perform(
+                post("/user/bulk-roles/grant")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(regrant))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(1,report.get("matchedUsers").asInt());
+        assertEquals(0,report.get("affectedRows").asInt());
+
+        BulkRoleAssignment revoke=new BulkRoleAssignment();
+        revoke.setUsernames(Collections.singletonList("username_0"));
+        revoke.setRole("ROLE_ADMIN");
+        result =mockMvc.perform(
+                post("/user/bulk-roles/revoke")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(revoke))
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        report=new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(0,report.get("affectedRows").asInt());
+
+        result =mockMvc.perform(
+                get("/user/getallusers")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+    }
+
+    @Test
+    public void exportEndPointShouldStreamGzippedCsvWithRoles() throws Exception {
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        MvcResult result =mockMvc.perform(
+                get("/user/export").param("format","csv")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+        result =mockMvc.perform(asyncDispatch(result)).andReturn();
+
+        assertEquals(HttpStatus.OK.value(),result.getResponse().getStatus());
+        assertEquals("application/gzip",result.getResponse().getContentType());
+
+        BufferedReader reader=new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())),
+                StandardCharsets.UTF_8));
+        assertEquals("username,firstname,lastname,email,roles",reader.readLine());
+        assertEquals("username_0,firstname0,lastname0,test_usr@tz.com0,ROLE_ADMIN",reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void exportEndPointShouldPageThroughAllUsers() throws Exception {
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        // Test pages hold 2 users, these span 3 pages
+        List<User> users=testUtil.generateUsers(5);
+        for(int i=1;i<users.size();i++) {
+            userRepository.save(users.get(i));
+        }
+
+        MvcResult result =mockMvc.perform(
+                get("/user/export").param("format","csv")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+        result =mockMvc.perform(asyncDispatch(result)).andReturn();
+
+        BufferedReader reader=new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())),
+                StandardCharsets.UTF_8));
+        reader.readLine();
+        assertEquals("username_0,firstname0,lastname0,test_usr@tz.com0,ROLE_ADMIN",reader.readLine());
+        for(int i=1;i<users.size();i++) {
+            assertEquals("username_"+i+",firstname"+i+",lastname"+i+",test_usr@tz.com"+i+",",reader.readLine());
+        }
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void exportEndPointShouldNeutralizeSpreadsheetFormulas() throws Exception {
+        String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
+
+        User user=testUtil.generateUsers(2).get(1);
+        user.setFirstname("=HYPERLINK(\"http://evil.test\",\"x\")");
+        user.setLastname("-2+3");
+        userRepository.save(user);
+
+        MvcResult result =mockMvc.perform(
+                get("/user/export").param("format","csv")
+                        .header("Authorization","Bearer "+authToken)
+        )
+                .andReturn();
+        result =mockMvc.perform(asyncDispatch(result)).andReturn();
+
+        BufferedReader reader=new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())),
+                StandardCharsets.UTF_8));
+        reader.readLine();
+        reader.readLine();
+        assertEquals("username_1,\"'=HYPERLINK(\"\"http://evil.test\"\",\"\"x\"\")\",'-2+3,test_usr@tz.com1,",reader.readLine());
+    }
+
     @Test
     public void expiredTokenShouldNotAllowUserToAccessEndPoints() throws Exception {
         String authToken = performLoginAndGetTokenWithGivenRole("ROLE_ADMIN");
@@ -548,9 +1052,29 @@ public class UserControllerTest {
         )
                 .andReturn();
 
-        String token=result.getResponse().getContentAsString();
-        token=token.substring(10,token.length()-2);
-        return token;
+        return new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("token").asText();
+    }
+
+    String loginAndGetRefreshToken() throws Exception
+    {
+        MvcResult result =mockMvc.perform(
+                post("/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(new LoginUser("username_0","welcome123")))
+        )
+                .andReturn();
+
+        return new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("refreshToken").asText();
+    }
+
+    MvcResult refresh(String refreshToken) throws Exception
+    {
+        return mockMvc.perform(
+                post("/user/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(testUtil.mapToJson(new RefreshTokenRequest(refreshToken)))
+        )
+                .andReturn();
     }
 
 
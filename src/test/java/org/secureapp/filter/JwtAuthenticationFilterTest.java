@@ -0,0 +1,194 @@
+package org.secureapp.filter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.cache.RevokedTokenCache;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.config.JwtTokenProvider;
+import org.secureapp.config.RsaKeyManager;
+import org.secureapp.config.SecuredUserDetails;
+import org.secureapp.config.TokenUserDetails;
+import org.secureapp.config.UserAuthenticationToken;
+import org.secureapp.config.UserDetailsServiceImpl;
+import org.secureapp.model.Role;
+import org.secureapp.model.User;
+import org.secureapp.service.RoleService;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class JwtAuthenticationFilterTest {
+
+    private static final String SIGNING_KEY = "hghjhkjhkhkhjJHJHHKJJHkhjhGHJHKHjhkjhjJH<JHKJHKhgfgfdtfuiuyYUIkutfRDTRdtfyf";
+
+    JwtAuthenticationFilter jwtAuthenticationFilter;
+
+    JwtTokenProvider jwtTokenProvider;
+
+    UserDetailsServiceImpl userDetailsService;
+
+    SecuredUserDetails userDetails;
+
+    @Before
+    public void init() {
+        SecurityContextHolder.clearContext();
+
+        RoleService roleService=mock(RoleService.class);
+        when(roleService.getAuthority(anyString())).thenAnswer(invocation -> new SimpleGrantedAuthority(invocation.getArgument(0)));
+
+        JwtTokenProvider provider=new JwtTokenProvider();
+        provider.TOKEN_VALIDITY=60;
+        provider.SIGNING_KEY=SIGNING_KEY;
+        provider.SIGNING_KEY_FILE="";
+        provider.AUTHORITIES_KEY="roles";
+        provider.TOKEN_PREFIX="Bearer";
+        provider.AUTHENTICATION_MODE="database";
+        ReflectionTestUtils.setField(provider,"rsaKeyManager",mock(RsaKeyManager.class));
+        ReflectionTestUtils.setField(provider,"roleService",roleService);
+        ReflectionTestUtils.setField(provider,"tokenRevocationCache",mock(TokenRevocationCache.class));
+        ReflectionTestUtils.setField(provider,"revokedTokenCache",mock(RevokedTokenCache.class));
+        provider.init();
+        jwtTokenProvider=spy(provider);
+
+        User user=User.builder().id(42L).username("username_0").password("hash")
+                .roles(Collections.singleton(new Role(1,"ROLE_USER"))).build();
+        userDetails=new SecuredUserDetails(user);
+        userDetailsService=mock(UserDetailsServiceImpl.class);
+        when(userDetailsService.loadUserByUsernameCached("username_0")).thenReturn(userDetails);
+
+        jwtAuthenticationFilter=new JwtAuthenticationFilter();
+        jwtAuthenticationFilter.HEADER_STRING="Authorization";
+        jwtAuthenticationFilter.TOKEN_PREFIX="Bearer";
+        ReflectionTestUtils.setField(jwtAuthenticationFilter,"userDetailsService",userDetailsService);
+        ReflectionTestUtils.setField(jwtAuthenticationFilter,"jwtTokenUtil",jwtTokenProvider);
+    }
+
+    @After
+    public void cleanup() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void validTokenShouldBeParsedOnceAndAuthenticateTheRequest() throws Exception
+    {
+        String token=generateToken();
+        MockFilterChain chain=new MockFilterChain();
+        MockHttpServletResponse response=filter(token,chain);
+
+        assertEquals(200,response.getStatus());
+        assertNotNull(chain.getRequest());
+        verify(jwtTokenProvider,times(1)).parseToken(token);
+        verify(jwtTokenProvider,never()).getUsernameFromToken(anyString());
+
+        Authentication authentication=SecurityContextHolder.getContext().getAuthentication();
+        assertEquals("username_0",authentication.getName());
+        assertEquals("ROLE_USER",authentication.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    public void expiredTokenShouldBeRejected() throws Exception
+    {
+        jwtTokenProvider.TOKEN_VALIDITY=-60;
+        String token=generateToken();
+
+        MockFilterChain chain=new MockFilterChain();
+        MockHttpServletResponse response=filter(token,chain);
+
+        assertEquals(401,response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    public void tamperedTokenShouldBeRejected() throws Exception
+    {
+        // Grants itself ROLE_ADMIN but keeps the signature of the original claims
+        String[] parts=generateToken().split("\\.");
+        String claims=new String(Base64.getUrlDecoder().decode(parts[1]),StandardCharsets.UTF_8);
+        String tamperedClaims=claims.replace("ROLE_USER","ROLE_ADMIN");
+        String token=parts[0]+"."+Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(tamperedClaims.getBytes(StandardCharsets.UTF_8))+"."+parts[2];
+
+        MockFilterChain chain=new MockFilterChain();
+        MockHttpServletResponse response=filter(token,chain);
+
+        assertEquals(401,response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    public void claimsModeShouldAuthenticateFromTheTokenWithoutLoadingTheUser() throws Exception
+    {
+        jwtTokenProvider.AUTHENTICATION_MODE="claims";
+        String token=generateToken();
+
+        MockFilterChain chain=new MockFilterChain();
+        MockHttpServletResponse response=filter(token,chain);
+
+        assertEquals(200,response.getStatus());
+        assertNotNull(chain.getRequest());
+        verifyNoInteractions(userDetailsService);
+
+        UserAuthenticationToken authentication=(UserAuthenticationToken) SecurityContextHolder.getContext().getAuthentication();
+        assertTrue(authentication.getPrincipal() instanceof TokenUserDetails);
+        assertEquals("username_0",authentication.getName());
+        assertEquals(Long.valueOf(42),authentication.getUserId());
+        assertEquals(1,authentication.getAuthorities().size());
+        assertEquals("ROLE_USER",authentication.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    public void claimsModeShouldLoadTheUserForTokensWithoutUserId() throws Exception
+    {
+        jwtTokenProvider.AUTHENTICATION_MODE="claims";
+        // Tokens issued before the user id claim was added
+        String token=jwtTokenProvider.generateToken(
+                new UsernamePasswordAuthenticationToken("username_0",null,userDetails.getAuthorities()));
+
+        MockFilterChain chain=new MockFilterChain();
+        MockHttpServletResponse response=filter(token,chain);
+
+        assertEquals(200,response.getStatus());
+        verify(userDetailsService,times(1)).loadUserByUsernameCached("username_0");
+        assertEquals(Long.valueOf(42),((UserAuthenticationToken) SecurityContextHolder.getContext().getAuthentication()).getUserId());
+    }
+
+    private String generateToken() {
+        return jwtTokenProvider.generateToken(
+                new UsernamePasswordAuthenticationToken(userDetails,null,userDetails.getAuthorities()));
+    }
+
+    private MockHttpServletResponse filter(String token, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request=new MockHttpServletRequest("GET","/user/getuser");
+        request.addHeader("Authorization","Bearer "+token);
+        MockHttpServletResponse response=new MockHttpServletResponse();
+        jwtAuthenticationFilter.doFilter(request,response,chain);
+        return response;
+    }
+}
@@ -0,0 +1,104 @@
+package org.secureapp.job;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.cache.RevokedTokenCache;
+import org.secureapp.cache.TokenRevocationCache;
+import org.secureapp.repository.BlackListedTokenRepository;
+import org.secureapp.repository.RefreshTokenRepository;
+import org.secureapp.repository.TokenRevocationRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TokenStorePurgeJobTest {
+
+    TokenStorePurgeJob tokenStorePurgeJob;
+
+    BlackListedTokenRepository blackListedTokenRepository;
+
+    RefreshTokenRepository refreshTokenRepository;
+
+    TokenRevocationRepository tokenRevocationRepository;
+
+    RevokedTokenCache revokedTokenCache;
+
+    TokenRevocationCache tokenRevocationCache;
+
+    @Before
+    public void init() {
+        blackListedTokenRepository=mock(BlackListedTokenRepository.class);
+        refreshTokenRepository=mock(RefreshTokenRepository.class);
+        tokenRevocationRepository=mock(TokenRevocationRepository.class);
+        revokedTokenCache=mock(RevokedTokenCache.class);
+        tokenRevocationCache=mock(TokenRevocationCache.class);
+
+        tokenStorePurgeJob=new TokenStorePurgeJob();
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"revocationRetention",900L);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"batchSize",2);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"maxBatches",100);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"blackListedTokenRepository",blackListedTokenRepository);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"refreshTokenRepository",refreshTokenRepository);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"tokenRevocationRepository",tokenRevocationRepository);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"revokedTokenCache",revokedTokenCache);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"tokenRevocationCache",tokenRevocationCache);
+        ReflectionTestUtils.setField(tokenStorePurgeJob,"meterRegistry",new SimpleMeterRegistry());
+        tokenStorePurgeJob.init();
+
+        when(refreshTokenRepository.findExpiredIds(any(),any())).thenReturn(Collections.emptyList());
+        when(tokenRevocationRepository.findUsernamesOlderThan(any(),any())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void expiredTokensShouldBeDeletedInBatches()
+    {
+        when(blackListedTokenRepository.findExpiredIds(any(),any()))
+                .thenReturn(Arrays.asList(1L,2L),Arrays.asList(3L,4L),Collections.singletonList(5L));
+        when(blackListedTokenRepository.deleteByIdIn(anyList())).thenReturn(2,2,1);
+
+        tokenStorePurgeJob.purgeExpiredTokens();
+
+        verify(blackListedTokenRepository).deleteByIdIn(Arrays.asList(1L,2L));
+        verify(blackListedTokenRepository).deleteByIdIn(Arrays.asList(3L,4L));
+        verify(blackListedTokenRepository).deleteByIdIn(Collections.singletonList(5L));
+    }
+
+    @Test
+    public void expiredTokenCutoffsShouldBeDeletedInBatches()
+    {
+        when(blackListedTokenRepository.findExpiredIds(any(),any())).thenReturn(Collections.emptyList());
+        when(tokenRevocationRepository.findUsernamesOlderThan(any(),any()))
+                .thenReturn(Arrays.asList("username_0","username_1"),Collections.singletonList("username_2"));
+        when(tokenRevocationRepository.deleteOlderThan(anyList(),any())).thenReturn(2,1);
+
+        tokenStorePurgeJob.purgeExpiredTokens();
+
+        verify(tokenRevocationRepository).deleteOlderThan(eq(Arrays.asList("username_0","username_1")),any(Instant.class));
+        verify(tokenRevocationRepository).deleteOlderThan(eq(Collections.singletonList("username_2")),any(Instant.class));
+        verify(tokenRevocationCache).evictOlderThan(any(Instant.class));
+    }
+
+    @Test
+    public void blackListFilterShouldOnlyBeRebuiltWhenStale()
+    {
+        when(blackListedTokenRepository.findExpiredIds(any(),any())).thenReturn(Collections.singletonList(1L));
+        when(blackListedTokenRepository.deleteByIdIn(anyList())).thenReturn(1);
+
+        tokenStorePurgeJob.purgeExpiredTokens();
+
+        verify(revokedTokenCache,times(1)).rebuildIfStale();
+        verify(revokedTokenCache,never()).rebuild();
+    }
+}
@@ -0,0 +1,111 @@
+package org.secureapp.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secureapp.model.Role;
+import org.secureapp.model.User;
+import org.secureapp.util.TestUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@EnableAutoConfiguration(exclude= FlywayAutoConfiguration.class)
+public class UserRepositoryTest {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    RoleRepository roleRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    TestUtil testUtil;
+
+    Role userRole;
+
+    Statistics statistics;
+
+    @Before
+    public void init() {
+        userRepository.deleteAll();
+
+        userRole = roleRepository.findByName("ROLE_USER");
+        if (userRole == null) {
+            userRole = roleRepository.save(new Role(null, "ROLE_USER"));
+        }
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void listingUsersShouldRunSameNumberOfStatementsRegardlessOfUserCount()
+    {
+        saveUsersWithRole(5);
+        statistics.clear();
+        assertEquals(5, userRepository.findAllWithRoles().size());
+        long statementsFor5Users = statistics.getPrepareStatementCount();
+
+        userRepository.deleteAll();
+        saveUsersWithRole(50);
+        statistics.clear();
+        List<User> users = userRepository.findAllWithRoles();
+        long statementsFor50Users = statistics.getPrepareStatementCount();
+
+        assertEquals(50, users.size());
+        assertEquals(1, users.get(0).getRoles().size());
+        assertEquals(statementsFor5Users, statementsFor50Users);
+        assertEquals(1, statementsFor50Users);
+    }
+
+    @Test
+    public void listingAPageOfUsersShouldFetchRolesInOneBatch()
+    {
+        saveUsersWithRole(50);
+        statistics.clear();
+
+        List<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 50));
+
+        assertEquals(50, users.size());
+        // One query for the page and one batched query for the roles
+        assertTrue(statistics.getPrepareStatementCount() <= 2);
+    }
+
+    @Test
+    public void lookingUpUserByNameShouldLoadRolesInSameStatement()
+    {
+        saveUsersWithRole(1);
+        statistics.clear();
+
+        User user = userRepository.findByNormalizedUsername("username_0");
+
+        assertEquals(1, user.getRoles().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    void saveUsersWithRole(int numberOfUsers)
+    {
+        for (User user : testUtil.generateUsers(numberOfUsers)) {
+            user.setRoles(new HashSet<>(Collections.singleton(userRole)));
+            userRepository.save(user);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.secureapp.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.model.Role;
+import org.secureapp.repository.RoleRepository;
+import org.secureapp.service.impl.RoleServiceImpl;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RoleServiceTest {
+
+    RoleServiceImpl roleService;
+
+    RoleRepository roleRepository;
+
+    @Before
+    public void init() {
+        roleRepository=mock(RoleRepository.class);
+        when(roleRepository.findAll()).thenReturn(Arrays.asList(new Role(1,"ROLE_USER"),new Role(2,"ROLE_ADMIN")));
+
+        roleService=new RoleServiceImpl();
+        ReflectionTestUtils.setField(roleService,"roleRepository",roleRepository);
+        roleService.refresh();
+    }
+
+    @Test
+    public void roleMaskShouldResolveToSharedAuthorities()
+    {
+        long roleMask=roleService.getRoleMask(Arrays.asList(
+                new SimpleGrantedAuthority("ROLE_USER"),new SimpleGrantedAuthority("ROLE_ADMIN")));
+        assertEquals(6,roleMask);
+
+        List<GrantedAuthority> authorities=roleService.getAuthorities(roleMask);
+        assertEquals(2,authorities.size());
+        assertSame(roleService.getAuthority("ROLE_USER"),authorities.get(0));
+        assertSame(roleService.getAuthority("ROLE_ADMIN"),authorities.get(1));
+        assertSame(authorities,roleService.getAuthorities(roleMask));
+    }
+
+    @Test
+    public void unknownRoleShouldNotBeEncodedInRoleMask()
+    {
+        long roleMask=roleService.getRoleMask(Arrays.asList(new SimpleGrantedAuthority("ROLE_AUDITOR")));
+
+        assertEquals(-1,roleMask);
+    }
+
+    @Test
+    public void unknownRoleNameShouldNotBeLookedUpInTheDatabase()
+    {
+        assertEquals("ROLE_ADMIN",roleService.findByName("ROLE_ADMIN").getName());
+        assertNull(roleService.findByName("ROLE_AUDITOR"));
+
+        verify(roleRepository,never()).findByName(anyString());
+    }
+}
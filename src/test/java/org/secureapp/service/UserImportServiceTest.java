@@ -0,0 +1,89 @@
+package org.secureapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.secureapp.dto.BulkImportReport;
+import org.secureapp.dto.BulkImportRowResult;
+import org.secureapp.model.Role;
+import org.secureapp.repository.UserBatchRepository;
+import org.secureapp.service.impl.UserImportServiceImpl;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserImportServiceTest {
+
+    UserImportServiceImpl userImportService;
+
+    UserBatchRepository userBatchRepository;
+
+    @Before
+    public void init() {
+        userBatchRepository=mock(UserBatchRepository.class);
+        when(userBatchRepository.findExistingNormalizedUsernames(any())).thenReturn(Collections.emptySet());
+        when(userBatchRepository.findExistingNormalizedEmails(any())).thenReturn(Collections.emptySet());
+
+        RoleService roleService=mock(RoleService.class);
+        when(roleService.findByName("ROLE_USER")).thenReturn(new Role(1,"ROLE_USER"));
+
+        PasswordEncoder passwordEncoder=mock(PasswordEncoder.class);
+        when(passwordEncoder.encode(any())).thenAnswer(invocation -> {
+            if ("failing123".equals(invocation.getArgument(0).toString())) {
+                throw new IllegalStateException("Hashing failed");
+            }
+            return "hash";
+        });
+
+        userImportService=new UserImportServiceImpl();
+        ReflectionTestUtils.setField(userImportService,"batchSize",500);
+        ReflectionTestUtils.setField(userImportService,"hashingThreads",1);
+        ReflectionTestUtils.setField(userImportService,"hashingQueueCapacity",1);
+        ReflectionTestUtils.setField(userImportService,"userBatchRepository",userBatchRepository);
+        ReflectionTestUtils.setField(userImportService,"roleService",roleService);
+        ReflectionTestUtils.setField(userImportService,"passwordEncoder",passwordEncoder);
+        ReflectionTestUtils.setField(userImportService,"validator",Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(userImportService,"objectMapper",new ObjectMapper());
+        ReflectionTestUtils.setField(userImportService,"transactionManager",mock(PlatformTransactionManager.class));
+        userImportService.init();
+    }
+
+    @After
+    public void shutdown() {
+        userImportService.shutdown();
+    }
+
+    @Test
+    public void rowWhoseHashFailsShouldBeReportedAndTheRestImported() throws Exception
+    {
+        String csv="username,password,firstname,lastname,email\n"+
+                "import_user_1,welcome123,Import,One,import1@test.com\n"+
+                "import_user_2,failing123,Import,Two,import2@test.com\n"+
+                "import_user_3,welcome123,Import,Three,import3@test.com\n"+
+                "import_user_4,welcome123,Import,Four,import4@test.com\n";
+
+        BulkImportReport report=userImportService.importCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3,report.getImported());
+        assertEquals(1,report.getFailed());
+        BulkImportRowResult failedRow=report.getRows().get(1);
+        assertEquals(3,failedRow.getLine());
+        assertEquals(BulkImportRowResult.FAILED,failedRow.getStatus());
+        assertEquals("Password hashing failed",failedRow.getMessage());
+        verify(userBatchRepository).insertUsers(anyList(),anyInt());
+    }
+}
@@ -17,17 +17,25 @@ import org.secureapp.repository.UserRepository;
 import org.secureapp.service.impl.UserServiceImpl;
 import org.secureapp.util.LoggedInUserHelper;
 import org.secureapp.util.TestUtil;
+import org.secureapp.util.UserETag;
 import org.secureapp.validation.ValidationHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @SpringBootTest
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -45,6 +53,9 @@ public class UserServiceTest {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    RoleService roleService;
+
     @Autowired
     TestUtil testUtil;
 
@@ -57,6 +68,7 @@ public class UserServiceTest {
     @Before
     public void init() {
         userRepository.deleteAll();
+        roleService.refresh();
         MockitoAnnotations.openMocks(this);
     }
 
@@ -80,6 +92,42 @@ public class UserServiceTest {
         userService.save(userDto);
     }
 
+    @Test
+    public void otherIntegrityViolationsShouldNotBeReportedAsDuplicates()
+    {
+        UserDto userDto=testUtil.generateUserDtos(1).get(0);
+        userDto.setUsername(null);
+
+        exceptionRule.expect(DataIntegrityViolationException.class);
+        userService.save(userDto);
+    }
+
+    @Test
+    public void concurrentRegistrationsOfSameUserShouldCreateOnlyOneUser() throws Exception
+    {
+        UserDto userDto=testUtil.generateUserDtos(1).get(0);
+        ExecutorService executorService=Executors.newFixedThreadPool(4);
+        List<Future<User>> registrations=new ArrayList<>();
+
+        for(int i=0;i<4;i++) {
+            registrations.add(executorService.submit(() -> userService.save(userDto)));
+        }
+
+        int rejectedRegistrations=0;
+        for(Future<User> registration : registrations) {
+            try {
+                registration.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RecordAlreadyExistsException);
+                rejectedRegistrations++;
+            }
+        }
+        executorService.shutdown();
+
+        assertEquals(3,rejectedRegistrations);
+        assertEquals(1,userRepository.count());
+    }
+
     @Test
     public void normalUserShouldBeAbleToFindOwnDetails()
     {
@@ -150,7 +198,7 @@ public class UserServiceTest {
                 .build();
 
 
-        User updatedUser = userService.update(userUpdateDto);
+        User updatedUser = userService.update(userUpdateDto, UserETag.of(user));
 
         assertEquals("changed@email.test", updatedUser.getEmail());
     }
@@ -173,7 +221,7 @@ public class UserServiceTest {
         exceptionRule.expect(RecordAlreadyExistsException.class);
         exceptionRule.expectMessage("User with same email already exists");
 
-        User updatedUser = userService.update(userUpdateDto);
+        User updatedUser = userService.update(userUpdateDto, "*");
     }
 
     @Test
@@ -194,7 +242,7 @@ public class UserServiceTest {
         exceptionRule.expect(InvalidUserException.class);
         exceptionRule.expectMessage("Invalid user name");
 
-        User updatedUser = userService.update(userUpdateDto);
+        User updatedUser = userService.update(userUpdateDto, UserETag.of(user2));
 
     }
 
@@ -213,7 +261,7 @@ public class UserServiceTest {
                 .email("changed@email.test1")
                 .build();
 
-        User updatedUser = userService.update(userUpdateDto);
+        User updatedUser = userService.update(userUpdateDto, UserETag.of(user1));
         assertEquals("changed@email.test1", updatedUser.getEmail());
 
         userUpdateDto=UserUpdateDto.builder().username(user2.getUsername())
@@ -222,7 +270,7 @@ public class UserServiceTest {
                 .email("changed@email.test2")
                 .build();
 
-        updatedUser = userService.update(userUpdateDto);
+        updatedUser = userService.update(userUpdateDto, UserETag.of(user2));
         assertEquals("changed@email.test2", updatedUser.getEmail());
 
     }
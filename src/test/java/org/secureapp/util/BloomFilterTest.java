@@ -0,0 +1,50 @@
+package org.secureapp.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void insertedDigestsShouldAlwaysBeReported()
+    {
+        BloomFilter bloomFilter=new BloomFilter(1000, 0.01);
+
+        for(int i=0;i<1000;i++) {
+            bloomFilter.put(TokenDigest.sha256("token_" + i));
+        }
+
+        for(int i=0;i<1000;i++) {
+            assertTrue(bloomFilter.mightContain(TokenDigest.sha256("token_" + i)));
+        }
+    }
+
+    @Test
+    public void emptyFilterShouldNotReportAnyDigest()
+    {
+        BloomFilter bloomFilter=new BloomFilter(1000, 0.01);
+
+        assertFalse(bloomFilter.mightContain(TokenDigest.sha256("token_0")));
+    }
+
+    @Test
+    public void falsePositiveRateShouldStayCloseToConfiguredRate()
+    {
+        BloomFilter bloomFilter=new BloomFilter(10000, 0.01);
+
+        for(int i=0;i<10000;i++) {
+            bloomFilter.put(TokenDigest.sha256("revoked_" + i));
+        }
+
+        int falsePositives=0;
+        for(int i=0;i<10000;i++) {
+            if(bloomFilter.mightContain(TokenDigest.sha256("valid_" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 300);
+    }
+}
@@ -0,0 +1,31 @@
+package org.secureapp.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ClientAddressTest {
+
+    @Test
+    public void ipv4AddressesShouldBeTheirOwnKey()
+    {
+        assertEquals("192.168.1.10",ClientAddress.rateLimitKey("192.168.1.10"));
+    }
+
+    @Test
+    public void ipv6AddressesShouldBeGroupedBySlash64()
+    {
+        String key=ClientAddress.rateLimitKey("2001:db8:1:2:aaaa:bbbb:cccc:dddd");
+
+        assertEquals(key,ClientAddress.rateLimitKey("2001:db8:1:2::1"));
+        assertEquals(key,ClientAddress.rateLimitKey("2001:DB8:1:2:ffff:ffff:ffff:ffff"));
+        assertNotEquals(key,ClientAddress.rateLimitKey("2001:db8:1:3::1"));
+    }
+
+    @Test
+    public void ipv4MappedAddressesShouldBeKeyedAsIpv4()
+    {
+        assertEquals("10.0.0.1",ClientAddress.rateLimitKey("::ffff:10.0.0.1"));
+    }
+}
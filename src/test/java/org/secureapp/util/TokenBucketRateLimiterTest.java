@@ -0,0 +1,84 @@
+package org.secureapp.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketRateLimiterTest {
+
+    @Test
+    public void requestsBeyondCapacityShouldBeRejected()
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(5, 60000, 100);
+
+        for(int i=0;i<5;i++) {
+            assertEquals(0,rateLimiter.tryAcquire("127.0.0.1"));
+        }
+
+        long retryAfter=rateLimiter.tryAcquire("127.0.0.1");
+        assertTrue(retryAfter > 0 && retryAfter <= 60000);
+    }
+
+    @Test
+    public void keysShouldHaveIndependentBuckets()
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(1, 60000, 100);
+
+        assertEquals(0,rateLimiter.tryAcquire("user_1"));
+        assertTrue(rateLimiter.tryAcquire("user_1") > 0);
+        assertEquals(0,rateLimiter.tryAcquire("user_2"));
+    }
+
+    @Test
+    public void numberOfKeysShouldStayBounded()
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(1, 60000, 100);
+
+        for(int i=0;i<1000;i++) {
+            rateLimiter.tryAcquire("user_" + i);
+        }
+
+        assertTrue(rateLimiter.size() <= 100);
+    }
+
+    @Test
+    public void floodOfNewKeysShouldNotResetLiveBuckets()
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(1, 60000, 100);
+
+        assertEquals(0,rateLimiter.tryAcquire("victim"));
+        for(int i=0;i<1000;i++) {
+            rateLimiter.tryAcquire("user_" + i);
+        }
+
+        assertTrue(rateLimiter.tryAcquire("victim") > 0);
+    }
+
+    @Test
+    public void newKeysShouldShareAnOverflowBucketOnceFull()
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(1, 60000, 2);
+
+        assertEquals(0,rateLimiter.tryAcquire("user_1"));
+        assertEquals(0,rateLimiter.tryAcquire("user_2"));
+
+        assertEquals(0,rateLimiter.tryAcquire("user_3"));
+        assertTrue(rateLimiter.tryAcquire("user_4") > 0);
+        assertEquals(2,rateLimiter.size());
+    }
+
+    @Test
+    public void fullBucketsShouldBeEvicted() throws InterruptedException
+    {
+        TokenBucketRateLimiter rateLimiter=new TokenBucketRateLimiter(1, 1, 100);
+
+        for(int i=0;i<100;i++) {
+            rateLimiter.tryAcquire("user_" + i);
+        }
+        Thread.sleep(10);
+
+        assertEquals(100,rateLimiter.evictExpired());
+        assertEquals(0,rateLimiter.tryAcquire("new_user"));
+    }
+}